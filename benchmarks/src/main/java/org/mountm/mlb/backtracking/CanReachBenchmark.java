@@ -0,0 +1,85 @@
+package org.mountm.mlb.backtracking;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link Game#canReach(Game)} against the precomputed
+ * {@link ReachabilityIndex}, on pairs of games that are close enough together
+ * for the answer to depend on the driving time.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CanReachBenchmark {
+
+	private static final int PAIRS = 1024;
+	// the search only looks a few days ahead of the last game
+	private static final int MAX_GAP = 60;
+
+	@Param("Games.csv")
+	public String gamesFile;
+
+	private final int[] from = new int[PAIRS];
+	private final int[] to = new int[PAIRS];
+	private final Game[] fromGames = new Game[PAIRS];
+	private final Game[] toGames = new Game[PAIRS];
+	private ReachabilityIndex reachability;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		RouteState.loadSchedule(gamesFile);
+		Schedule schedule = BacktrackingRunner.getSchedule();
+		reachability = BacktrackingRunner.getReachability();
+		Random random = new Random(1455);
+		for (int i = 0; i < PAIRS; i++) {
+			from[i] = random.nextInt(schedule.size() - MAX_GAP);
+			to[i] = from[i] + 1 + random.nextInt(MAX_GAP);
+			fromGames[i] = schedule.game(from[i]);
+			toGames[i] = schedule.game(to[i]);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PAIRS)
+	public int gameCanReach() {
+		int reachable = 0;
+		for (int i = 0; i < PAIRS; i++) {
+			if (fromGames[i].canReach(toGames[i])) {
+				reachable++;
+			}
+		}
+		return reachable;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PAIRS)
+	public int indexCanReach() {
+		int reachable = 0;
+		for (int i = 0; i < PAIRS; i++) {
+			if (reachability.canReach(from[i], to[i])) {
+				reachable++;
+			}
+		}
+		return reachable;
+	}
+
+}
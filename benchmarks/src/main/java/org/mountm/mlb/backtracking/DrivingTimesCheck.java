@@ -0,0 +1,72 @@
+package org.mountm.mlb.backtracking;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Checks that the buckets of {@link DrivingTimes} are chosen by the local
+ * time at the stadium being left. Schedule times are on the clock of the
+ * eastern time zone, and every other time zone is some hours behind it, so
+ * a departure at 17:00 on a Friday in Chicago is 18:00 on the schedule's
+ * clock and has to land in the Friday 17:00 bucket.
+ *
+ * Not a benchmark; run it after changing the driving time model:
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar org.mountm.mlb.backtracking.DrivingTimesCheck
+ * </pre>
+ *
+ * It exits with status 1 at the first difference.
+ *
+ */
+public class DrivingTimesCheck {
+
+	private static final int FRIDAY = 4;
+	private static final int SUNDAY = 6;
+
+	public static void main(String[] args) throws IOException {
+		// Friday, July 20, 2018 and Sunday, July 22, 2018
+		int friday = 1440 * Game.epochDay(2018, 7, 20);
+		int sunday = 1440 * Game.epochDay(2018, 7, 22);
+		for (int timeZone = 0; timeZone <= 3; timeZone++) {
+			int behind = 60 * timeZone;
+			check("Friday 17:00 in time zone " + timeZone, DrivingTimes.bucket(timeZone, friday + 17 * 60 + behind),
+					FRIDAY * 24 + 17);
+			check("Friday 00:30 in time zone " + timeZone, DrivingTimes.bucket(timeZone, friday + 30 + behind),
+					FRIDAY * 24);
+			// late on Sunday out west is already Monday on the schedule's clock
+			check("Sunday 23:00 in time zone " + timeZone, DrivingTimes.bucket(timeZone, sunday + 23 * 60 + behind),
+					SUNDAY * 24 + 23);
+		}
+		for (Stadium stadium : Stadium.values()) {
+			int departure = friday + 17 * 60 + 60 * stadium.getTimeZone();
+			check("Friday 17:00 at " + stadium, DrivingTimes.bucket(stadium, departure), FRIDAY * 24 + 17);
+		}
+
+		// a rule for leaving Chicago at 5pm on Fridays applies at 18:00 on
+		// the schedule's clock, and not an hour either side
+		File rules = File.createTempFile("traffic", ".csv");
+		try {
+			try (FileWriter out = new FileWriter(rules)) {
+				out.write("FRI,17,CHC,MIL,x2\n");
+			}
+			DrivingTimes times = DrivingTimes.read(rules);
+			int light = Stadium.CHC.getMinutesTo(Stadium.MIL);
+			check("CHC to MIL at 17:00", times.minutes(Stadium.CHC, Stadium.MIL, friday + 18 * 60), 2 * light);
+			check("CHC to MIL at 16:00", times.minutes(Stadium.CHC, Stadium.MIL, friday + 17 * 60), light);
+			check("CHC to MIL at 18:00", times.minutes(Stadium.CHC, Stadium.MIL, friday + 19 * 60), light);
+		} finally {
+			rules.delete();
+		}
+		System.out.println("Driving time buckets follow local time");
+	}
+
+	private static void check(String what, int actual, int expected) {
+		if (actual != expected) {
+			System.out.println(what + ": expected " + expected + ", found " + actual);
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,52 @@
+package org.mountm.mlb.backtracking;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The checks that run once for every node of the backtracking search.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotPathBenchmark {
+
+	@Benchmark
+	public boolean badSolution(RouteState state) {
+		return BacktrackingRunner.badSolution(state.route);
+	}
+
+	@Benchmark
+	public Integer tripLength(RouteState state) {
+		return BacktrackingRunner.tripLength(state.route);
+	}
+
+	@Benchmark
+	public int getPossibleRemainingDHs(RouteState state) {
+		return BacktrackingRunner.getPossibleRemainingDHs(state.route);
+	}
+
+	// The copy keeps the shared route unchanged. Its cost is measured on its
+	// own by copyRoute.
+	@Benchmark
+	public Route extendSolution(RouteState state) {
+		Route partial = state.route.copy();
+		return BacktrackingRunner.extendSolution(partial, partial.last() + 1);
+	}
+
+	@Benchmark
+	public Route copyRoute(RouteState state) {
+		return state.route.copy();
+	}
+
+}
@@ -0,0 +1,152 @@
+package org.mountm.mlb.backtracking;
+
+import gnu.trove.list.array.TLongArrayList;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Checks {@link MaskTrie} against a brute-force reference that keeps a plain
+ * list of masks per key. Random adds, superset queries and clears are run on
+ * every backing (heap, direct and mapped) for circuits of 30, 40 and 64
+ * stadiums, so both the one-int and the two-int bucket layouts are covered.
+ * The tries with a capacity are small enough to fill up, which also checks
+ * that a full trie refuses masks and still answers queries.
+ *
+ * Not a benchmark; run it after changing the trie:
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar org.mountm.mlb.backtracking.MaskTrieCheck
+ * </pre>
+ *
+ * It prints one line per trie and exits with status 1 at the first
+ * difference.
+ *
+ */
+public class MaskTrieCheck {
+
+	private static final int[] NUM_STADIUMS = { 30, 40, 64 };
+	private static final int OPERATIONS = 200000;
+	// few keys, so that the tries under them get deep; the last is negative
+	// as a short
+	private static final short[] KEYS = { 0, 1, 2, 1455, (short) 40000 };
+	// about 220 nodes, so the run fills it
+	private static final long CAPACITY = 1 << 15;
+
+	public static void main(String[] args) throws IOException {
+		Random random = new Random(args.length > 0 ? Long.parseLong(args[0]) : 1455);
+		for (int numStadiums : NUM_STADIUMS) {
+			check("heap", new MaskTrie(numStadiums), numStadiums, random);
+			check("direct", MaskTrie.offHeap(numStadiums, CAPACITY), numStadiums, random);
+			File file = File.createTempFile("masktrie", ".dat");
+			try (MaskTrie trie = MaskTrie.mapped(file, numStadiums, CAPACITY)) {
+				check("mapped", trie, numStadiums, random);
+			}
+		}
+	}
+
+	private static void check(String backing, MaskTrie trie, int numStadiums, Random random) {
+		TLongArrayList[] reference = new TLongArrayList[KEYS.length];
+		for (int k = 0; k < KEYS.length; k++) {
+			reference[k] = new TLongArrayList();
+		}
+		int adds = 0;
+		int refused = 0;
+		for (int op = 0; op < OPERATIONS; op++) {
+			int k = random.nextInt(KEYS.length);
+			long mask = randomMask(numStadiums, random);
+			int choice = random.nextInt(20000);
+			if (choice == 0) {
+				trie.clear();
+				for (TLongArrayList masks : reference) {
+					masks.resetQuick();
+				}
+			} else if (choice < 10000) {
+				boolean full = trie.isFull();
+				boolean expected = !containsSuperset(reference[k], mask) && !full;
+				if (trie.add(KEYS[k], mask) != expected) {
+					fail(backing, numStadiums, op, "add", KEYS[k], mask);
+				}
+				if (expected) {
+					removeSubsets(reference[k], mask);
+					reference[k].add(mask);
+					adds++;
+				} else if (full) {
+					refused++;
+				}
+			} else if (trie.containsSuperset(KEYS[k], mask) != containsSuperset(reference[k], mask)) {
+				fail(backing, numStadiums, op, "containsSuperset", KEYS[k], mask);
+			}
+			if (op % 1000 == 0) {
+				compare(backing, trie, numStadiums, op, reference);
+			}
+		}
+		compare(backing, trie, numStadiums, OPERATIONS, reference);
+		System.out.println(backing + ", " + numStadiums + " stadiums: " + adds + " masks added, " + refused
+				+ " refused when full, " + trie.size() + " stored at the end");
+	}
+
+	// Most masks have about half of the stadiums, so few of them cover each
+	// other and the tries grow deep. The rest have their own density, so
+	// that some cover many others and some are covered by many.
+	private static long randomMask(int numStadiums, Random random) {
+		double density = random.nextInt(10) == 0 ? 0.2 + 0.7 * random.nextDouble() : 0.5;
+		long mask = 0;
+		for (int s = 0; s < numStadiums; s++) {
+			if (random.nextDouble() < density) {
+				mask |= 1L << s;
+			}
+		}
+		return mask;
+	}
+
+	private static boolean containsSuperset(TLongArrayList masks, long mask) {
+		for (int i = 0; i < masks.size(); i++) {
+			if ((masks.getQuick(i) & mask) == mask) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void removeSubsets(TLongArrayList masks, long mask) {
+		for (int i = masks.size() - 1; i >= 0; i--) {
+			long stored = masks.getQuick(i);
+			if ((stored & mask) == stored) {
+				masks.removeAt(i);
+			}
+		}
+	}
+
+	// The stored masks, through size() and forEach, must be exactly the
+	// reference masks.
+	private static void compare(String backing, MaskTrie trie, int numStadiums, int op,
+			TLongArrayList[] reference) {
+		Set<String> expected = new HashSet<>();
+		for (int k = 0; k < KEYS.length; k++) {
+			for (int i = 0; i < reference[k].size(); i++) {
+				expected.add(KEYS[k] + ":" + reference[k].getQuick(i));
+			}
+		}
+		Set<String> actual = new HashSet<>();
+		trie.forEach((key, mask) -> {
+			actual.add(key + ":" + mask);
+			return true;
+		});
+		if (trie.size() != expected.size() || !actual.equals(expected)) {
+			System.out.println(backing + ", " + numStadiums + " stadiums, operation " + op + ": stored "
+					+ trie.size() + " masks, expected " + expected.size());
+			System.exit(1);
+		}
+	}
+
+	private static void fail(String backing, int numStadiums, int op, String method, short key, long mask) {
+		System.out.println(backing + ", " + numStadiums + " stadiums, operation " + op + ": " + method + "(" + key
+				+ ", " + Long.toBinaryString(mask) + ") differs from the reference");
+		System.exit(1);
+	}
+
+}
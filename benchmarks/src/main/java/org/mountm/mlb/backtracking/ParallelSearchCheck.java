@@ -0,0 +1,87 @@
+package org.mountm.mlb.backtracking;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that the parallel search returns the same trip as the sequential
+ * one. {@link BacktrackingRunner} keeps its state in static fields, so each
+ * search runs in its own JVM, in its own output directory so that no
+ * invalid candidates are shared. The default arguments give a maximum
+ * driving time equal to the optimum, so the first solution found is longer
+ * than the bound and ties with the bound have to replace it.
+ *
+ * Not a benchmark; run it from the project root after changing the search:
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar org.mountm.mlb.backtracking.ParallelSearchCheck [runner arguments]
+ * </pre>
+ *
+ * It exits with status 1 if any number of threads gives another trip.
+ *
+ */
+public class ParallelSearchCheck {
+
+	private static final String[] DEFAULT_ARGS = { "40", "15818", "1455", "1462", "1478", "1490", "1511", "1524",
+			"1526", "1554", "1594", "1612" };
+	private static final int[] THREADS = { 1, 2, 4, 8 };
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String[] runnerArgs = args.length > 0 ? args : DEFAULT_ARGS;
+		List<String> expected = null;
+		for (int threads : THREADS) {
+			List<String> trip = search(runnerArgs, threads);
+			System.out.println(threads + " threads: " + (trip.isEmpty() ? "no solution" : trip.get(trip.size() - 1)));
+			if (expected == null) {
+				expected = trip;
+			} else if (!trip.equals(expected)) {
+				System.out.println(threads + " threads found " + trip + ", one thread found " + expected);
+				System.exit(1);
+			}
+		}
+	}
+
+	// The trip printed at the end of the search, followed by its length, or
+	// an empty list if there is none
+	private static List<String> search(String[] runnerArgs, int threads) throws IOException, InterruptedException {
+		File dir = Files.createTempDirectory("parallel").toFile();
+		List<String> command = new ArrayList<>();
+		command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(BacktrackingRunner.class.getName());
+		command.add("--threads=" + threads);
+		command.add("--output-dir=" + dir);
+		command.addAll(Arrays.asList(runnerArgs));
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		List<String> lines = new ArrayList<>();
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				lines.add(line);
+			}
+		}
+		process.waitFor();
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+
+		// the length is the last line that is only a number, after the games
+		// of the trip
+		int numStadiums = Venues.MLB.size();
+		for (int i = lines.size() - 1; i >= numStadiums; i--) {
+			if (lines.get(i).matches("\\d+")) {
+				return new ArrayList<>(lines.subList(i - numStadiums, i + 1));
+			}
+		}
+		return new ArrayList<>();
+	}
+
+}
@@ -0,0 +1,47 @@
+package org.mountm.mlb.backtracking;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A partial route taken from a known good 40 day trip that starts with game
+ * 1455 of the bundled schedule. The search state in {@link BacktrackingRunner}
+ * is set up as if the trip had been given as the root candidate.
+ *
+ */
+@State(Scope.Benchmark)
+public class RouteState {
+
+	static final int[] GOOD_ROUTE = { 1455, 1462, 1478, 1490, 1511, 1524, 1526, 1554, 1594, 1612 };
+	static final int NUM_DAYS = 40;
+	static final int MAX_TRIP_LENGTH = 50000;
+
+	// relative to the directory the benchmarks are run from
+	@Param("Games.csv")
+	public String gamesFile;
+
+	@Param({ "3", "6", "10" })
+	public int routeSize;
+
+	Route route;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		loadSchedule(gamesFile);
+		BacktrackingRunner.resetSearch(NUM_DAYS, MAX_TRIP_LENGTH, GOOD_ROUTE[0]);
+		route = new Route(BacktrackingRunner.getSchedule());
+		for (int i = 0; i < routeSize; i++) {
+			route.push(GOOD_ROUTE[i]);
+		}
+	}
+
+	static synchronized void loadSchedule(String gamesFile) {
+		if (BacktrackingRunner.getSchedule() == null) {
+			BacktrackingRunner.readGameInputFile(gamesFile);
+		}
+	}
+
+}
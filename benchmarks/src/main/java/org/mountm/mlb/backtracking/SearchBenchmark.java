@@ -0,0 +1,82 @@
+package org.mountm.mlb.backtracking;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * A complete search of the subtree below a single root game, with a day limit
+ * small enough that the search finishes in about a second. Besides searches
+ * per second, the number of partial solutions checked per second is reported
+ * as "nodes". Run the main method (or add <code>-prof gc</code>) to also see
+ * the allocation rate.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+	@Param("Games.csv")
+	public String gamesFile;
+
+	@Param("1455")
+	public int root;
+
+	@Param("27")
+	public int numDays;
+
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Nodes {
+		public long nodes;
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		RouteState.loadSchedule(gamesFile);
+	}
+
+	// every search starts without any known invalid candidates
+	@Setup(Level.Invocation)
+	public void reset() {
+		BacktrackingRunner.resetSearch(numDays, RouteState.MAX_TRIP_LENGTH, root);
+	}
+
+	@Benchmark
+	public Route search(Nodes counter) {
+		Route partial = new Route(BacktrackingRunner.getSchedule());
+		partial.push(root);
+		long before = BacktrackingRunner.getNodesVisited();
+		BacktrackingRunner.backtrack(partial);
+		counter.nodes += BacktrackingRunner.getNodesVisited() - before;
+		return partial;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder().include(SearchBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class).build();
+		new Runner(options).run();
+	}
+
+}
@@ -1,100 +1,259 @@
 package org.mountm.mlb.backtracking;
 
-import gnu.trove.map.TShortObjectMap;
-import gnu.trove.map.hash.TShortObjectHashMap;
-import gnu.trove.procedure.TIntProcedure;
-import gnu.trove.set.TIntSet;
-import gnu.trove.set.hash.TIntHashSet;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
-import java.util.EnumSet;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-import org.joda.time.DateTime;
-import org.joda.time.Minutes;
-import org.joda.time.format.DateTimeFormat;
+import org.mountm.mlb.backtracking.SearchMetrics.PruneRule;
 
 import static java.lang.Integer.*;
 
 public class BacktrackingRunner {
 
 	private static int maxNumDays = 30;
-	private static int bestTripLength = Integer.MAX_VALUE;
-	private static List<Game> games = new ArrayList<>(2430);
-	private static TShortObjectMap<TIntSet> noExtensions = new TShortObjectHashMap<>(510);
-	private static TShortObjectMap<Set<Game>> missedStadiums = new TShortObjectHashMap<>(30);
-	private static int maxSize = 0;
-	private static List<Game> bestSolution = new ArrayList<>(30);
-	private static boolean foundSolution = false;
-
-	private static final EnumSet<Stadium> WEST_COAST_STADIUMS = EnumSet.of(Stadium.LAA, Stadium.OAK, Stadium.SEA,
-			Stadium.ARI, Stadium.LAD, Stadium.SDP, Stadium.SFG);
-	private static final int NINE_AM = 32400000;
-	private static final int TEN_PM = 79200000;
+	private static final AtomicInteger bestTripLength = new AtomicInteger(Integer.MAX_VALUE);
+	private static Schedule schedule;
+	private static ReachabilityIndex reachability;
+	// the checksums of the schedule and driving times, which noExtensions.dat
+	// and search.checkpoint are only used with
+	private static long scheduleChecksum;
+	private static int drivingChecksum;
+	// the store for noExtensions when searching one start day at a time
+	private static MaskTrie noExtensions = new MaskTrie();
+	// With a capacity (in megabytes), noExtensions is kept outside the heap,
+	// in storeFile if one is given. Once it is full new entries are dropped.
+	private static long storeMegabytes = 0;
+	private static String storeFile = null;
+	private static volatile boolean reportedFullStore = false;
+
+	// Search every start day in the range at once instead of one at a time
+	private static boolean sweep = false;
+	private static int sweepFirstDay = 0;
+	private static int sweepLastDay = Integer.MAX_VALUE;
+	// noExtensions is shared by every worker when searching in parallel
+	private static final ReadWriteLock noExtensionsLock = new ReentrantReadWriteLock();
+	// noExtensions.dat, open for appending while new entries are being added
+	private static PruningLog pruningLog;
+	private static int checkpointSeconds = 60;
+	// The sequential depth-first search also saves its position at every
+	// checkpoint, and --resume continues from the saved position. The search
+	// thread writes it, so the timer only asks for it.
+	private static boolean resume = false;
+	private static volatile boolean checkpointRequested = false;
+	private static int[] rootGames = new int[0];
+	// the failure criteria for the start day being searched, and for every
+	// start day being searched in a sweep, indexed by day of the schedule
+	private static FailureCriteria criteria;
+	private static FailureCriteria[] criteriaByDay = new FailureCriteria[0];
+	private static volatile int maxSize = 0;
+	private static Route bestSolution;
+	// the length of bestSolution, which can be longer than bestTripLength when
+	// args[1] is below the first solution found
+	private static int bestSolutionLength = Integer.MAX_VALUE;
+	private static volatile boolean foundSolution = false;
+	private static SearchMetrics metrics = new SearchMetrics();
+	// seconds between metrics snapshots, or 0 for none
+	private static int metricsSeconds = 0;
+
+	// Worker threads for the fork/join search. With a single thread the
+	// original recursive search is used.
+	private static int numThreads = 1;
+	// Number of levels below the root candidate that are split into separate
+	// fork/join tasks. Deeper levels are searched sequentially by each task.
+	private static int splitDepth = 4;
+
+	// Search partial solutions in order of tripLength before falling back to
+	// the depth-first search.
+	private static boolean bestFirst = false;
+	// Memory for the best-first search, in megabytes. Each stored partial
+	// solution takes BYTES_PER_NODE bytes.
+	private static long memoryMegabytes = 256;
+	private static final int BYTES_PER_NODE = 16;
+	// Partial solutions kept at each level of the beam search that takes over
+	// when the best-first search runs out of memory.
+	private static int beamWidth = 1000;
+
+	// Find the best trip for every number of days up to the limit, and prune
+	// against the trips with as many days or fewer instead of bestTripLength.
+	private static boolean findFrontier = false;
+	private static ParetoFrontier frontier;
+
+	// the venues of the schedule being searched, and masks of all of them and
+	// of the ones on the West Coast
+	private static Venues venues = Venues.MLB;
+	private static int numStadiums = venues.size();
+	static long westCoastMask = maskOf(venues.westCoast());
+	static long allStadiumsMask = venues.allMask();
+	private static final int NINE_AM = 540;
+	private static final int TEN_PM = 1320;
+	// a trip that ends this close to home can drive back the same night
+	private static final int NEAR_HOME = 120;
 	private static final String NO_EXTENSIONS_FILE_NAME = "noExtensions.dat";
-	private static Set<EnumSet<Stadium>> possibleDHs = new HashSet<>(8);
+	private static final String METRICS_FILE_NAME = "metrics.jsonl";
+	private static final String CHECKPOINT_FILE_NAME = "search.checkpoint";
+	// the schedule to search, and the directory the files above are written
+	// to (the working directory if null)
+	private static String gamesFile = "Games.csv";
+	private static String outputDir = null;
+	private static String venuesFile = null;
+	private static String trafficFile = null;
+	private static Timer timer;
+	// the driving times model, and the bound built from it
+	private static DrivingTimes drivingTimes = DrivingTimes.STATIC;
+	private static DrivingBound drivingBound = new DrivingBound();
 	
 
 	public static void main(String[] args) {
 
-		readGameInputFile();
+		args = readOptions(args);
+		venues = readVenues(venuesFile);
+		drivingTimes = readDrivingTimes(trafficFile, venues);
+		if (venues.size() > Venues.MAX_SEARCH_SIZE) {
+			System.out.println("The search handles up to " + Venues.MAX_SEARCH_SIZE + " venues, not "
+					+ venues.size());
+			return;
+		}
+
+		readGameInputFile(gamesFile);
+		try {
+			noExtensions = newStore(storeFile);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
 
 		maxNumDays = Integer.parseInt(args[0]);
 		
-		bestTripLength = Integer.parseInt(args[1]);
+		bestTripLength.set(Integer.parseInt(args[1]));
+		if (findFrontier) {
+			frontier = new ParetoFrontier(maxNumDays, bestTripLength.get());
+			if (bestFirst) {
+				System.out.println("Best-first search does not find a frontier, using depth-first search");
+				bestFirst = false;
+			}
+			if (resume) {
+				System.out.println("A frontier search cannot be resumed, starting from the root candidate");
+				resume = false;
+			}
+		}
 
-		List<Game> partial = new ArrayList<>(30);
+		Route partial = new Route(schedule);
+		bestSolution = new Route(schedule);
 		for (int i = 2; i < args.length; i++) {
-			Game g = games.get(parseInt(args[i]));
-			if (haveVisitedStadium(partial, g.getStadium())) {
-				System.out.println("Trying to visit " + g.getStadium() + " twice!");
+			int g = parseInt(args[i]);
+			if (partial.hasVisited(schedule.stadiumIndex(g))) {
+				System.out.println("Trying to visit " + venues.code(schedule.stadiumIndex(g)) + " twice!");
+				return;
+			}
+			partial.push(g);
+		}
+		rootGames = partial.toArray();
+
+		if (sweep) {
+			if (!partial.isEmpty()) {
+				System.out.println("A sweep searches every start day, so it does not take a root candidate.");
 				return;
 			}
-			partial.add(g);
+			if (resume) {
+				System.out.println("A sweep cannot be resumed, starting from the first start day");
+			}
+			scheduleTimers();
+			boolean searched = sweep();
+			timer.cancel();
+			if (metricsSeconds > 0) {
+				writeMetrics();
+			}
+			if (!searched) {
+				System.out.println("The sweep did not finish.");
+			} else if (!foundSolution) {
+				System.out.println("No solution.");
+			} else if (frontier != null) {
+				printFrontier();
+			} else {
+				printSolution(bestSolution);
+				System.out.println(tripLength(bestSolution));
+			}
+			return;
 		}
 
 		if (verifyInitialData(partial)) {
 			
 			System.out.println(partial);
 
+			Route resumeFrom = resume ? readCheckpoint() : null;
+			if (resumeFrom != null && numThreads > 1) {
+				System.out.println("Resuming with the single-threaded search");
+				numThreads = 1;
+			}
+			// without a root candidate the checkpoint may be on a later start day
+			Route start = resumeFrom != null ? resumeFrom : partial;
+
 			// initialize the missedStadiums collection
-			if (partial.isEmpty()) {
+			if (start.isEmpty()) {
 				recalculateFailureCriteria(0);
 			} else {
-				recalculateFailureCriteria(games.indexOf(partial.get(0)));
+				recalculateFailureCriteria(start.first());
 			}
 
-			readPruningData();
-			if (badSolution(partial)) {
+			readPruningData(schedule.day(start.isEmpty() ? 0 : start.first()));
+			if (foundSolution) {
+				// no entries are added once a solution has been found
+				writePruningData();
+			}
+			if (resumeFrom == null && badSolution(partial)) {
 				System.out.println("Infeasible starting point.");
 				return;
 			}
 
-			// decrement maxSize once per minute to increase output
-			Timer timer = new Timer(true);
-			timer.schedule(new TimerTask() {
-				public void run() {
-					if (maxSize > 0) {
-						maxSize--;
-					}
-				}
-			}, 60000, 60000);
+			scheduleTimers();
 
-			backtrack(partial);
+			boolean complete = false;
+			if (resumeFrom != null) {
+				resume(resumeFrom, partial.size());
+				complete = true;
+			} else if (bestFirst) {
+				if (partial.isEmpty()) {
+					System.out.println("Best-first search needs a root candidate, using depth-first search");
+				} else {
+					complete = bestFirstSearch(partial);
+				}
+			}
+			if (!complete) {
+				search(partial);
+			}
+			if (numThreads < 2) {
+				// the search is finished, so there is nothing to resume
+				outputFile(outputDir, CHECKPOINT_FILE_NAME).delete();
+			}
+			timer.cancel();
+			if (metricsSeconds > 0) {
+				writeMetrics();
+			}
 			if (!foundSolution) {
 				writePruningData();
+			} else if (frontier != null) {
+				printFrontier();
 			} else {
 				printSolution(bestSolution);
 				System.out.println(tripLength(bestSolution));
@@ -104,117 +263,651 @@ public class BacktrackingRunner {
 
 	}
 
-	private static void readGameInputFile() {
-		BufferedReader br = null;
+	private static void scheduleTimers() {
+		// decrement maxSize once per minute to increase output
+		timer = new Timer(true);
+		timer.schedule(new TimerTask() {
+			public void run() {
+				if (maxSize > 0) {
+					maxSize--;
+				}
+			}
+		}, 60000, 60000);
+		// save new entries in noExtensions, so a crash loses at most one
+		// checkpoint interval
+		timer.schedule(new TimerTask() {
+			public void run() {
+				checkpointPruningData();
+				if (numThreads < 2 && !sweep && frontier == null) {
+					checkpointRequested = true;
+				}
+			}
+		}, 1000L * checkpointSeconds, 1000L * checkpointSeconds);
+		if (metricsSeconds > 0) {
+			timer.schedule(new TimerTask() {
+				public void run() {
+					writeMetrics();
+				}
+			}, 1000L * metricsSeconds, 1000L * metricsSeconds);
+		}
+	}
 
-		try {
-			String currentLine;
-			String[] gameData;
-			br = new BufferedReader(new FileReader("Games.csv"));
-			while ((currentLine = br.readLine()) != null) {
-				gameData = currentLine.split(",");
-				// subtract half hour to account for parking and getting into stadium (this will be corrected when printing solutions)
-				DateTime startTime = DateTimeFormat.forPattern("MM/dd/yyyy kk:mm").parseDateTime(gameData[0]).minusMinutes(30);
-				Stadium stadium = Stadium.valueOf(gameData[1]);
-				games.add(new Game(stadium, startTime));
+	// Options are given as --name=value and may appear anywhere in the
+	// argument list. The remaining (positional) arguments are returned.
+	private static String[] readOptions(String[] args) {
+		List<String> positional = new ArrayList<>(args.length);
+		for (String arg : args) {
+			if (arg.startsWith("--threads=")) {
+				numThreads = parseInt(arg.substring("--threads=".length()));
+			} else if (arg.startsWith("--split-depth=")) {
+				splitDepth = parseInt(arg.substring("--split-depth=".length()));
+			} else if (arg.startsWith("--mode=")) {
+				bestFirst = arg.substring("--mode=".length()).equals("best-first");
+			} else if (arg.startsWith("--memory=")) {
+				memoryMegabytes = parseInt(arg.substring("--memory=".length()));
+			} else if (arg.startsWith("--beam-width=")) {
+				beamWidth = parseInt(arg.substring("--beam-width=".length()));
+			} else if (arg.startsWith("--metrics=")) {
+				metricsSeconds = parseInt(arg.substring("--metrics=".length()));
+			} else if (arg.equals("--sweep")) {
+				sweep = true;
+			} else if (arg.startsWith("--sweep=")) {
+				// a range of start days, as days of the year
+				String[] range = arg.substring("--sweep=".length()).split("-");
+				sweep = true;
+				sweepFirstDay = parseInt(range[0]);
+				sweepLastDay = parseInt(range[range.length - 1]);
+			} else if (arg.startsWith("--store-capacity=")) {
+				storeMegabytes = parseInt(arg.substring("--store-capacity=".length()));
+			} else if (arg.startsWith("--store-file=")) {
+				storeFile = arg.substring("--store-file=".length());
+			} else if (arg.startsWith("--checkpoint=")) {
+				checkpointSeconds = parseInt(arg.substring("--checkpoint=".length()));
+			} else if (arg.equals("--frontier")) {
+				findFrontier = true;
+			} else if (arg.equals("--resume")) {
+				resume = true;
+			} else if (arg.startsWith("--traffic=")) {
+				trafficFile = arg.substring("--traffic=".length());
+			} else if (arg.startsWith("--venues=")) {
+				venuesFile = arg.substring("--venues=".length());
+			} else if (arg.startsWith("--games=")) {
+				gamesFile = arg.substring("--games=".length());
+			} else if (arg.startsWith("--output-dir=")) {
+				outputDir = arg.substring("--output-dir=".length());
+			} else if (arg.startsWith("--")) {
+				System.out.println("Ignoring unknown option " + arg);
+			} else {
+				positional.add(arg);
 			}
+		}
+		return positional.toArray(new String[positional.size()]);
+	}
+
+	static Schedule getSchedule() {
+		return schedule;
+	}
+
+	static ReachabilityIndex getReachability() {
+		return reachability;
+	}
+
+	static DoubleHeaderBound getDoubleHeaderBound() {
+		return criteria.doubleHeaderBound;
+	}
+
+	static long getNodesVisited() {
+		return metrics.nodes();
+	}
+
+	// Forgets everything learned by previous searches. The schedule must
+	// already be loaded.
+	static void resetSearch(int numDays, int maxTripLength, int firstGame) {
+		maxNumDays = numDays;
+		bestTripLength.set(maxTripLength);
+		bestSolution = new Route(schedule);
+		bestSolutionLength = Integer.MAX_VALUE;
+		foundSolution = false;
+		maxSize = 0;
+		criteria = null;
+		metrics = new SearchMetrics(numStadiums);
+		recalculateFailureCriteria(firstGame);
+	}
+
+	// The search works from the schedule arrays and the reachability index,
+	// which are read from the snapshot of the games file when it is current.
+	static void readGameInputFile(String fileName) {
+		readGameInputFile(fileName, drivingTimes);
+	}
+
+	static void readGameInputFile(String fileName, DrivingTimes times) {
+		try {
+			ScheduleLoader loader = ScheduleLoader.load(new File(fileName), times);
+			schedule = loader.schedule();
+			reachability = loader.reachability();
+			scheduleChecksum = loader.checksum();
+			drivingChecksum = loader.drivingChecksum();
+			criteriaByDay = new FailureCriteria[schedule.lastDay() + 1];
+			drivingTimes = times;
+			drivingBound = new DrivingBound(times);
+			venues = times.venues();
+			numStadiums = venues.size();
+			westCoastMask = maskOf(venues.westCoast());
+			allStadiumsMask = venues.allMask();
+			noExtensions = new MaskTrie(numStadiums);
+			metrics = new SearchMetrics(numStadiums);
 		} catch (IOException e) {
 			e.printStackTrace();
-		} finally {
-			try {
-				if (br != null)
-					br.close();
-			} catch (IOException ex) {
-				ex.printStackTrace();
-			}
 		}
 	}
 
-	private static boolean verifyInitialData(List<Game> partial) {
+	// Reads the venues for --venues, or returns the MLB stadiums if there is
+	// no file or it cannot be read.
+	static Venues readVenues(String fileName) {
+		if (fileName == null) {
+			return Venues.MLB;
+		}
+		try {
+			return Venues.read(new File(fileName));
+		} catch (IOException e) {
+			System.out.println("Could not read venues, using the MLB stadiums: " + e.getMessage());
+			return Venues.MLB;
+		}
+	}
+
+	// Reads a driving times model for --traffic. The static times are used if
+	// there is no file or it cannot be read.
+	static DrivingTimes readDrivingTimes(String fileName, Venues venues) {
+		if (fileName == null) {
+			return DrivingTimes.of(venues);
+		}
+		try {
+			return DrivingTimes.read(new File(fileName), venues);
+		} catch (IOException e) {
+			System.out.println("Could not read driving times, using the static times: " + e.getMessage());
+			return DrivingTimes.of(venues);
+		}
+	}
+
+	// A file in the directory given by --output-dir, or in the working
+	// directory if there is none. Absolute names are left alone.
+	static File outputFile(String outputDir, String name) {
+		if (outputDir == null || new File(name).isAbsolute()) {
+			return new File(name);
+		}
+		File dir = new File(outputDir);
+		dir.mkdirs();
+		return new File(dir, name);
+	}
+
+	private static boolean verifyInitialData(Route partial) {
 		if (partial.size() < 2) {
 			return true;
 		}
 		for (int i = 0; i < partial.size() - 1; i++) {
-			if (!partial.get(i).canReach(partial.get(i + 1))) {
-				System.out.println("Can't get from " + partial.get(i) + " to " + partial.get(i + 1));
+			if (!reachability.canReach(partial.get(i), partial.get(i + 1))) {
+				System.out.println("Can't get from " + schedule.game(partial.get(i)) + " to "
+						+ schedule.game(partial.get(i + 1)));
 				return false;
 			}
 		}
 		return true;
 	}
 
-	@SuppressWarnings("unchecked")
-	private static void readPruningData() {
+	// Loads noExtensions.dat if it was written for the same start day, day
+	// limit, schedule and driving times, then rewrites it without redundant entries and keeps it open so
+	// that new entries can be appended.
+	private static void readPruningData(int startDay) {
+		noExtensionsLock.writeLock().lock();
 		try {
-			FileInputStream fis = new FileInputStream(NO_EXTENSIONS_FILE_NAME);
-			ObjectInputStream ois = new ObjectInputStream(fis);
-			noExtensions = (TShortObjectMap<TIntSet>) ois.readObject();
-			ois.close();
+			pruningLog = new PruningLog(outputFile(outputDir, NO_EXTENSIONS_FILE_NAME), numStadiums, scheduleChecksum,
+					drivingChecksum);
+			int numRecords = pruningLog.read(noExtensions, startDay, maxNumDays);
+			if (numRecords >= 0) {
+				System.out.println("Read " + numRecords + " invalid candidates, " + noExtensions.size() + " kept");
+			}
+			pruningLog.compact(noExtensions, startDay, maxNumDays);
 		} catch (IOException e) {
 			e.printStackTrace();
-		} catch (ClassNotFoundException e) {
+		} finally {
+			noExtensionsLock.writeLock().unlock();
+		}
+	}
+
+	// Restores the best trip so far from search.checkpoint, and returns the
+	// partial solution to continue the search from. Returns null if the
+	// search has to start from the root candidate.
+	private static Route readCheckpoint() {
+		SearchCheckpoint checkpoint;
+		try {
+			checkpoint = SearchCheckpoint.read(outputFile(outputDir, CHECKPOINT_FILE_NAME));
+		} catch (IOException e) {
 			e.printStackTrace();
+			return null;
+		}
+		if (checkpoint == null) {
+			System.out.println("No checkpoint to resume from, starting from the root candidate");
+			return null;
 		}
+		if (checkpoint.scheduleChecksum() != scheduleChecksum || checkpoint.drivingChecksum() != drivingChecksum) {
+			System.out.println(CHECKPOINT_FILE_NAME
+					+ " was written for a different schedule or driving times, ignoring it");
+			return null;
+		}
+		if (checkpoint.numDays() != maxNumDays || !Arrays.equals(checkpoint.root(), rootGames)) {
+			System.out.println(CHECKPOINT_FILE_NAME
+					+ " was written for a different day limit or root candidate, ignoring it");
+			return null;
+		}
+		bestTripLength.set(checkpoint.bestTripLength());
+		if (checkpoint.bestSolution().length > 0) {
+			bestSolution = new Route(schedule);
+			for (int g : checkpoint.bestSolution()) {
+				bestSolution.push(g);
+			}
+			bestSolutionLength = tripLength(bestSolution);
+			foundSolution = true;
+			System.out.println("Best solution so far is " + bestTripLength);
+		}
+		Route position = new Route(schedule);
+		for (int g : checkpoint.position()) {
+			position.push(g);
+		}
+		if (position.size() == 0) {
+			return null;
+		}
+		System.out.println("Resuming from " + position);
+		return position;
 	}
 
-	// missedStadiums stores information about the latest point in time at which
-	// each stadium can be visited. The keys are days of the year. The values
-	// are a set of games. There is one game for each stadium that must have
-	// been visited by the key date.
-	//
-	// noExtensions also depends on the starting date of all partial solutions
-	// being the same. It must be cleared when the starting date changes.
-	private static void recalculateFailureCriteria(int index) {
-		int index2 = index;
-		noExtensions.clear();
-		Game[] lastGameHere = new Game[30];
-		Game g = games.get(index++);
-		int lastDay = g.dayOfYear() + maxNumDays;
-		int firstDay = g.dayOfYear();
-		while (g.dayOfYear() < lastDay && index < games.size()) {
-			lastGameHere[g.stadiumIndex()] = g;
-			g = games.get(index++);
-		}
-		for (int i = 0; i < maxNumDays; i++) {
-			Set<Game> mapEntry = new HashSet<Game>(30);
-			for (int j = 0; j < 30; j++) {
-				if (lastGameHere[j].dayOfYear() - firstDay <= i) {
-					mapEntry.add(lastGameHere[j]);
+	// Saves the position of the depth-first search. The partial solution has
+	// not been searched yet, so a resumed search starts with it.
+	private static void writeCheckpoint(Route partial) {
+		checkpointRequested = false;
+		int[] best = foundSolution ? bestSolution.toArray() : new int[0];
+		try {
+			new SearchCheckpoint(maxNumDays, scheduleChecksum, drivingChecksum, bestTripLength.get(), rootGames, best,
+					partial.toArray())
+					.write(outputFile(outputDir, CHECKPOINT_FILE_NAME));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	// The failure criteria depend on the starting date of all partial
+	// solutions being the same. They must be rebuilt, and noExtensions
+	// cleared, when the starting date changes. The double headers found for
+	// earlier start days are kept.
+	static void recalculateFailureCriteria(int index) {
+		noExtensionsLock.writeLock().lock();
+		try {
+			noExtensions.clear();
+			if (pruningLog != null && pruningLog.isOpen()) {
+				pruningLog.compact(noExtensions, schedule.day(index), maxNumDays);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			noExtensionsLock.writeLock().unlock();
+		}
+		TLongSet possibleDHs = new TLongHashSet(8);
+		if (criteria != null) {
+			possibleDHs = criteria.possibleDHs;
+			criteriaByDay[criteria.startDay] = null;
+		}
+		criteria = new FailureCriteria(schedule, reachability, index, maxNumDays, possibleDHs, noExtensions,
+				noExtensionsLock);
+		criteriaByDay[criteria.startDay] = criteria;
+		System.out.println(criteria);
+	}
+
+	// The failure criteria for the day the partial solution starts on
+	private static FailureCriteria criteriaFor(Route partial) {
+		return partial.isEmpty() ? criteria : criteriaByDay[schedule.day(partial.first())];
+	}
+
+	// A new store for noExtensions, outside the heap if it has a capacity.
+	private static MaskTrie newStore(String file) throws IOException {
+		if (storeMegabytes == 0) {
+			return new MaskTrie(numStadiums);
+		}
+		return file == null ? MaskTrie.offHeap(numStadiums, storeMegabytes << 20)
+				: MaskTrie.mapped(outputFile(outputDir, file), numStadiums, storeMegabytes << 20);
+	}
+
+	// Searches the start days in the sweep range on a pool of threads, one
+	// start day per task. Each start day has its own failure criteria, and
+	// they all share the best trip found so far. The stores for noExtensions
+	// are reused by later start days, so there is one per thread. Returns
+	// false if a start day could not be searched.
+	private static boolean sweep() {
+		int threads = numThreads > 1 ? numThreads : Runtime.getRuntime().availableProcessors();
+		BlockingQueue<MaskTrie> stores = new ArrayBlockingQueue<>(threads);
+		try {
+			for (int k = 0; k < threads; k++) {
+				stores.add(newStore(storeFile == null ? null : storeFile + "." + k));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> startDays = new ArrayList<>();
+		// the last game of the schedule is never considered, as before
+		int first = 0;
+		while (first < schedule.size() - 1) {
+			int end = first;
+			while (end < schedule.size() - 1 && schedule.day(end) == schedule.day(first)) {
+				end++;
+			}
+			if (schedule.day(first) >= sweepFirstDay && schedule.day(first) <= sweepLastDay) {
+				int start = first;
+				int stop = end;
+				startDays.add(executor.submit(() -> searchStartDay(start, stop, stores)));
+			}
+			first = end;
+		}
+		executor.shutdown();
+		try {
+			for (Future<?> startDay : startDays) {
+				startDay.get();
+			}
+			return true;
+		} catch (ExecutionException e) {
+			e.getCause().printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		// the start days being searched stop after their current root game
+		executor.shutdownNow();
+		return false;
+	}
+
+	// Searches the trips that start with each of the games from first to
+	// end - 1, which are all on the same day. Start days where some stadium
+	// has no game left before the trip has to end are skipped.
+	private static void searchStartDay(int first, int end, BlockingQueue<MaskTrie> stores) {
+		MaskTrie store;
+		try {
+			store = stores.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		FailureCriteria dayCriteria = null;
+		try {
+			store.clear();
+			dayCriteria = new FailureCriteria(schedule, reachability, first, maxNumDays, new TLongHashSet(8), store,
+					new ReentrantReadWriteLock());
+			if (dayCriteria.unplayed != 0) {
+				System.out.println("Skipped start day " + dayCriteria.startDay + ", no games left at "
+						+ venues.toString(dayCriteria.unplayed));
+				return;
+			}
+			criteriaByDay[dayCriteria.startDay] = dayCriteria;
+			for (int g = first; g < end && !Thread.currentThread().isInterrupted(); g++) {
+				Route root = new Route(schedule);
+				root.push(g);
+				backtrack(root);
+			}
+			System.out.println("Searched start day " + dayCriteria.startDay);
+		} finally {
+			if (dayCriteria != null) {
+				criteriaByDay[dayCriteria.startDay] = null;
+			}
+			stores.add(store);
+		}
+	}
+
+	// Runs the search from the root candidate, either with the recursive
+	// backtracking algorithm or split across a fork/join pool.
+	private static void search(Route partial) {
+		if (numThreads < 2) {
+			backtrack(partial);
+			return;
+		}
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		if (!partial.isEmpty()) {
+			pool.invoke(new SubtreeTask(partial.copy(), partial.size() + splitDepth));
+		} else {
+			// The failure criteria depend on the starting day, so only trips
+			// that start on the same day can be searched at the same time.
+			for (int i = 0; i < schedule.size() - 1; i++) {
+				if (i > 0 && schedule.day(i - 1) != schedule.day(i)) {
+					recalculateFailureCriteria(i);
 				}
+				maxSize = 0;
+				Route root = new Route(schedule);
+				root.push(i);
+				pool.invoke(new SubtreeTask(root, 1 + splitDepth));
 			}
-			missedStadiums.put((short) (firstDay + i), mapEntry);
 		}
-		
-		Game g1 = games.get(index2++);
-		while (g1.dayOfYear() < lastDay && index2 < games.size()) {
-			int j = index2;
-			Game g2 = games.get(j++);
-			while (g2.dayOfYear() == g1.dayOfYear() && j < games.size()) {
-				if (g1.canReach(g2)) {
-					EnumSet<Stadium> possibleDH = EnumSet.of(g1.getStadium(), g2.getStadium());
-					boolean shouldAdd = true;
-					for (EnumSet<Stadium> set : possibleDHs) {
-						shouldAdd = shouldAdd && !set.containsAll(possibleDH);
+		pool.shutdown();
+	}
+
+	// A subtree of the search. Partial solutions shorter than splitSize fork
+	// one task per extension; larger ones are searched with the sequential
+	// backtracking algorithm. Every task owns its partial solution.
+	@SuppressWarnings("serial")
+	private static class SubtreeTask extends RecursiveAction {
+
+		private final Route partial;
+		private final int splitSize;
+
+		SubtreeTask(Route partial, int splitSize) {
+			this.partial = partial;
+			this.splitSize = splitSize;
+		}
+
+		@Override
+		protected void compute() {
+			if (partial.size() >= splitSize) {
+				backtrack(partial);
+				return;
+			}
+			if (badSolution(partial)) {
+				return;
+			}
+			if (validSolution(partial)) {
+				processSolution(partial);
+				return;
+			} else if (maxSize < partial.size()) {
+				maxSize = partial.size();
+				printPartial(partial);
+			}
+			List<SubtreeTask> subtasks = new ArrayList<>();
+			int index = nextCandidate(partial, partial.last() + 1);
+			while (index >= 0) {
+				Route extension = partial.copy();
+				extension.push(index);
+				subtasks.add(new SubtreeTask(extension, splitSize));
+				index = nextCandidate(partial, index + 1);
+			}
+			invokeAll(subtasks);
+			// same as exhausting the extensions in extendSolution, but only
+			// once every subtree has been searched
+			if (!foundSolution) {
+				addToParity(partial);
+			}
+		}
+	}
+
+	// Searches partial solutions in order of tripLength (driving so far plus a
+	// lower bound on the rest of the trip), so the first solution taken from
+	// the queue is optimal. Each node is stored as its last game and its
+	// parent, and the route is rebuilt from the root when it is expanded.
+	// Returns true if the search is complete. If the memory budget runs out
+	// first, the best nodes in the queue are handed to a beam search, and the
+	// depth-first search has to finish the job.
+	//
+	// noExtensions is only read here: a node that is not expanded yet may
+	// still have valid extensions.
+	private static boolean bestFirstSearch(Route root) {
+		int capacity = (int) Math.min(Integer.MAX_VALUE - 8, (memoryMegabytes << 20) / BYTES_PER_NODE);
+		int[] nodeGame = new int[capacity];
+		int[] nodeParent = new int[capacity];
+		long[] queue = new long[capacity];
+		nodeGame[0] = -1;
+		nodeParent[0] = -1;
+		int numNodes = 1;
+		queue[0] = (long) tripLength(root) << 32;
+		int queueSize = 1;
+
+		while (queueSize > 0) {
+			int node = (int) queue[0];
+			queue[0] = queue[--queueSize];
+			siftDown(queue, queueSize, 0);
+			Route partial = rebuildRoute(root, node, nodeGame, nodeParent);
+			if (validSolution(partial)) {
+				processSolution(partial);
+				return true;
+			}
+			if (maxSize < partial.size()) {
+				maxSize = partial.size();
+				printPartial(partial);
+			}
+			int index = nextCandidate(partial, partial.last() + 1);
+			while (index >= 0) {
+				partial.push(index);
+				if (!badSolution(partial)) {
+					int length = tripLength(partial);
+					if (length <= bestTripLength.get()) {
+						if (numNodes == capacity) {
+							System.out.println("Best-first search stored " + numNodes
+									+ " partial solutions, switching to beam search");
+							List<Route> beam = new ArrayList<>(beamWidth);
+							beam.add(partial.copy());
+							while (queueSize > 0 && beam.size() < beamWidth) {
+								beam.add(rebuildRoute(root, (int) queue[0], nodeGame, nodeParent));
+								queue[0] = queue[--queueSize];
+								siftDown(queue, queueSize, 0);
+							}
+							beamSearch(beam);
+							return false;
+						}
+						nodeGame[numNodes] = index;
+						nodeParent[numNodes] = node;
+						queue[queueSize] = ((long) length << 32) | numNodes++;
+						siftUp(queue, queueSize++);
 					}
-					if (shouldAdd) {
-						possibleDHs.add(possibleDH);
+				}
+				partial.pop();
+				index = nextCandidate(partial, index + 1);
+			}
+		}
+		return true;
+	}
+
+	private static Route rebuildRoute(Route root, int node, int[] nodeGame, int[] nodeParent) {
+		TIntArrayList games = new TIntArrayList();
+		for (; node > 0; node = nodeParent[node]) {
+			games.add(nodeGame[node]);
+		}
+		Route partial = root.copy();
+		for (int i = games.size() - 1; i >= 0; i--) {
+			partial.push(games.get(i));
+		}
+		return partial;
+	}
+
+	// binary heap operations on the best-first queue
+	private static void siftUp(long[] heap, int i) {
+		long entry = heap[i];
+		while (i > 0 && heap[(i - 1) / 2] > entry) {
+			heap[i] = heap[(i - 1) / 2];
+			i = (i - 1) / 2;
+		}
+		heap[i] = entry;
+	}
+
+	private static void siftDown(long[] heap, int size, int i) {
+		long entry = heap[i];
+		while (2 * i + 1 < size) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && heap[child + 1] < heap[child]) {
+				child++;
+			}
+			if (heap[child] >= entry) {
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = entry;
+	}
+
+	// Extends every partial solution in the beam, and keeps the beamWidth
+	// extensions with the fewest travel days (then the lowest tripLength) for
+	// the next level. The best
+	// solution found at each level is passed to processSolution, which
+	// tightens the bound for everything that follows.
+	private static void beamSearch(List<Route> beam) {
+		while (!beam.isEmpty()) {
+			// travel days and tripLength in the high bits, extension number in
+			// the low bits
+			TLongArrayList extensions = new TLongArrayList();
+			TIntArrayList extensionParent = new TIntArrayList();
+			TIntArrayList extensionGame = new TIntArrayList();
+			Route best = null;
+			int bestLength = Integer.MAX_VALUE;
+			for (int i = 0; i < beam.size(); i++) {
+				Route partial = beam.get(i);
+				int index = nextCandidate(partial, partial.last() + 1);
+				while (index >= 0) {
+					partial.push(index);
+					if (!badSolution(partial)) {
+						int length = tripLength(partial);
+						if (length > bestTripLength.get()) {
+							// not good enough
+						} else if (validSolution(partial)) {
+							if (length < bestLength) {
+								best = partial.copy();
+								bestLength = length;
+							}
+						} else {
+							extensions.add(((long) travelDays(partial) << 52) | ((long) length << 32)
+									| extensionGame.size());
+							extensionParent.add(i);
+							extensionGame.add(index);
+						}
 					}
+					partial.pop();
+					index = nextCandidate(partial, index + 1);
 				}
-				g2 = games.get(j++);
 			}
-			g1 = games.get(index2++);
+			if (best != null) {
+				processSolution(best);
+			}
+			extensions.sort();
+			List<Route> next = new ArrayList<>(beamWidth);
+			for (int i = 0; i < extensions.size() && i < beamWidth; i++) {
+				int extension = (int) extensions.get(i);
+				Route partial = beam.get(extensionParent.get(extension)).copy();
+				partial.push(extensionGame.get(extension));
+				next.add(partial);
+			}
+			beam = next;
 		}
-		
-		System.out.println("There are " + getPossibleRemainingDHs(new ArrayList<Game>()) + " possible DHs on this trip:");
-		for (EnumSet<Stadium> possibleDH : possibleDHs) {
-			System.out.println(possibleDH.toString());
+	}
+
+	// Continues a depth-first search from a saved partial solution. The
+	// partial solution is searched, then each level above it carries on with
+	// the next extension, just as backtrack would have after returning.
+	private static void resume(Route partial, int rootSize) {
+		backtrack(partial);
+		while (partial.size() > rootSize) {
+			if (nextExtension(partial) != null) {
+				backtrack(partial);
+			}
 		}
-		
 	}
 
 	// standard backtracking algorithm - just added the printPartial logic after
 	// returning from a bad solution.
-	private static void backtrack(List<Game> partial) {
+	static void backtrack(Route partial) {
+		if (checkpointRequested) {
+			writeCheckpoint(partial);
+		}
 		if (badSolution(partial)) {
 			return;
 		}
@@ -232,209 +925,176 @@ public class BacktrackingRunner {
 		}
 	}
 
-	private static boolean badSolution(List<Game> partial) {
-		if (travelDays(partial) > maxNumDays
-				|| (foundSolution && tripLength(partial) > bestTripLength)) {
-			return true;
+	static boolean badSolution(Route partial) {
+		metrics.node(partial.size());
+		int days = travelDays(partial);
+		if (days > maxNumDays) {
+			return metrics.pruned(PruneRule.DAY_LIMIT);
+		}
+		if (foundSolution
+				&& tripLength(partial) > (frontier == null ? bestTripLength.get() : frontierBound(partial, days))) {
+			return metrics.pruned(PruneRule.TRIP_LENGTH);
 		}
 
 		if (validSolution(partial) || partial.isEmpty()) {
 			return false;
 		}
 		
-		int numRestDays = getRestDays(partial);
-		int numDHs = getDHs(partial);
+		int numRestDays = partial.restDays();
+		int numDHs = partial.doubleHeaders();
 		int possibleRemainingDHs = getPossibleRemainingDHs(partial);
 		
-		if ((numDHs + possibleRemainingDHs - numRestDays) < 30 - maxNumDays) {
-			return true;
+		if ((numDHs + possibleRemainingDHs - numRestDays) < numStadiums - maxNumDays) {
+			return metrics.pruned(PruneRule.DOUBLE_HEADERS);
 		}
 
 		// If the trip has gone to the West Coast, it must hit all West Coast
 		// stadiums before leaving.
-		Game last = partial.get(partial.size() - 1);
-		if (!WEST_COAST_STADIUMS.contains(last.getStadium())) {
-			EnumSet<Stadium> needed = EnumSet.copyOf(WEST_COAST_STADIUMS);
-			for (Game g : partial) {
-				needed.remove(g.getStadium());
-			}
+		int last = partial.last();
+		if ((westCoastMask & 1L << schedule.stadiumIndex(last)) == 0) {
+			long needed = westCoastMask & ~partial.visited();
 			// After removing all West Coast stadiums that have been visited,
 			// the remainder should be all or nothing.
-			if (!needed.containsAll(WEST_COAST_STADIUMS) && !needed.isEmpty()) {
-				return true;
+			if (needed != westCoastMask && needed != 0) {
+				return metrics.pruned(PruneRule.WEST_COAST);
 			}
 		}
 
 		// Next, check if any stadiums are missing that must be present based on
 		// the time limits (i.e. teams leaving for a long road trip).
-		for (Game g : missedStadiums.get((short) last.dayOfYear())) {
-			if (!(haveVisitedStadium(partial, g.getStadium()) || last.canReach(g))) {
-				return true;
+		FailureCriteria dayCriteria = criteriaFor(partial);
+		if ((dayCriteria.unplayed & ~partial.visited()) != 0) {
+			return metrics.pruned(PruneRule.MISSED_STADIUM);
+		}
+		for (int i : dayCriteria.missedStadiums.get((short) schedule.day(last))) {
+			if (!(partial.hasVisited(schedule.stadiumIndex(i)) || reachability.canReach(last, i))) {
+				return metrics.pruned(PruneRule.MISSED_STADIUM);
 			}
 		}
 
 		// Finally, check to see if an equivalent path was already discarded
-		short key = (short) games.indexOf(last);
-		// return noExtensions.containsKey(key) && noExtensions.get(key).contains(calculateValue(partial));
-		return didEvaluateEquivalentPath(key, partial);
+		short key = (short) last;
+		return didEvaluateEquivalentPath(key, partial) && metrics.pruned(PruneRule.NO_EXTENSIONS);
 	}
 
 	// Any partial solution that ends at the same game as a previously discarded solution,
 	// and does not visit any stadiums not visited in that solution,
 	// does not need to be reconsidered.
-	private static boolean didEvaluateEquivalentPath(short key, List<Game> partial) {
-		if (noExtensions.containsKey(key)) {
-			TIntSet previouslyConsidered = noExtensions.get(key);
-			int val = calculateValue(partial);
-			// forEach returns false if the iteration terminated early
-			return !previouslyConsidered.forEach(new TIntProcedure() {
-				// execute returns true if additional operations are allowed;
-				// i.e. if the number we're testing was not a match for the new partial solution
-				public boolean execute(int test) {
-					// A & B == B iff all 1 bits in B are also 1 bits in A
-					// meaning the stadium masks in B are all also in A (extra stadiums in A are allowed)
-					return (test & val) != val;
-				}
-			});
-		}
-		return false;
-	}
-
-	private static int getPossibleRemainingDHs(List<Game> partial) {
-		Set<EnumSet<Stadium>> options = new HashSet<>(possibleDHs.size());
-		Set<EnumSet<Stadium>> prunedOptions = new HashSet<>();
-		for (EnumSet<Stadium> set : possibleDHs) {
-			options.add(set.clone());
-		}
-		
-		int result = 0;
-		boolean isLastDayDH = false;
-		if (partial.size() > 1 && partial.get(partial.size() - 2).dayOfYear() == partial.get(partial.size() - 1).dayOfYear()) {
-			isLastDayDH = true;
-		}
-		if (isLastDayDH) {
-			for (int i = 0; i < partial.size(); i++) {
-				for (EnumSet<Stadium> set: options) {
-					set.remove(partial.get(i).getStadium());
-				}
-			}
-		} else {
-			for (int i = 0; i < partial.size() - 1; i++) {
-				for (EnumSet<Stadium> set: options) {
-					set.remove(partial.get(i).getStadium());
-				}
-			}
-		}
-		for (EnumSet<Stadium> set: options) {
-			if (set.size() > 1) {
-				prunedOptions.add(set);
-			}
-		}
-		
-		for (Set<EnumSet<Stadium>> candidate : getPowerSet(prunedOptions)) {
-			if (candidate.size() > result && testCandidate(candidate)) {
-				result = candidate.size();
-			}
+	private static boolean didEvaluateEquivalentPath(short key, Route partial) {
+		metrics.noExtensionsLookup();
+		FailureCriteria c = criteriaFor(partial);
+		c.noExtensionsLock.readLock().lock();
+		try {
+			// a discarded solution that visited all of these stadiums (and
+			// possibly more) is a match for the new partial solution
+			return c.noExtensions.containsSuperset(key, partial.visited());
+		} finally {
+			c.noExtensionsLock.readLock().unlock();
 		}
-		return result;
 	}
 
-	private static boolean testCandidate(Set<EnumSet<Stadium>> candidate) {
-		EnumSet<Stadium> stadiums = EnumSet.noneOf(Stadium.class);
-		for (EnumSet<Stadium> set : candidate) {
-			if (EnumSet.complementOf(stadiums).containsAll(set)) {
-				stadiums.addAll(set);
-			} else {
-				return false;
-			}
-		}
-		return true;
+	// The longest trip that a completion of the partial solution can have
+	// without being dominated by the frontier. A completion takes at least
+	// one more day for every remaining stadium that cannot be part of a
+	// double header, and has to beat the trips with that many days or fewer.
+	private static int frontierBound(Route partial, int days) {
+		int remaining = numStadiums - partial.size();
+		int minDays = days + Math.max(0, remaining - getPossibleRemainingDHs(partial));
+		return frontier.bound(minDays);
 	}
 
-	private static <T> Set<Set<T>> getPowerSet(Set<T> originalSet) {
-	    Set<Set<T>> sets = new HashSet<Set<T>>();
-	    if (originalSet.isEmpty()) {
-	        sets.add(new HashSet<T>());
-	        return sets;
-	    }
-	    List<T> list = new ArrayList<T>(originalSet);
-	    T head = list.get(0);
-	    Set<T> rest = new HashSet<T>(list.subList(1, list.size())); 
-	    for (Set<T> set : getPowerSet(rest)) {
-	        Set<T> newSet = new HashSet<T>();
-	        newSet.add(head);
-	        newSet.addAll(set);
-	        sets.add(newSet);
-	        sets.add(set);
-	    }       
-	    return sets;
-	}
-
-	private static int getDHs(List<Game> partial) {
-		int result = 0;
-		for (int i = 0; i < partial.size() - 1; i++) {
-			if (partial.get(i).dayOfYear() == partial.get(i + 1).dayOfYear()) {
-				result++;
-			}
-		}
-		return result;
+	// The most double headers that can be added to the trip, using stadiums
+	// that have not been visited yet.
+	static int getPossibleRemainingDHs(Route partial) {
+		// the last game can still be part of a double header unless the
+		// route already ends with one
+		long visited = partial.endsWithDoubleHeader() ? partial.visited() : partial.visitedBeforeLast();
+		return criteriaFor(partial).doubleHeaderBound.maxRemaining(visited);
 	}
 
-	private static int getRestDays(List<Game> partial) {
-		int result = 0;
-		for (int i = 0; i < partial.size() - 1; i++) {
-			if (partial.get(i).dayOfYear() + 1 < partial.get(i + 1).dayOfYear()) {
-				result = result + (partial.get(i + 1).dayOfYear() - partial.get(i).dayOfYear()) - 1;
+	private static long maskOf(boolean[] stadiums) {
+		long mask = 0;
+		for (int i = 0; i < stadiums.length; i++) {
+			if (stadiums[i]) {
+				mask |= 1L << i;
 			}
 		}
-		return result;
+		return mask;
 	}
 
-	private static boolean validSolution(List<Game> partial) {
+	private static boolean validSolution(Route partial) {
 		// all stadium-related error checking is done prior to this point - we
 		// only need to check the size of the solution.
-		return partial.size() == 30;
+		return partial.size() == numStadiums;
 	}
 
-	// keep track of the current best solution
-	private static void processSolution(List<Game> partial) {
+	// keep track of the current best solution. Synchronized because workers in
+	// the parallel search share the incumbent.
+	private static synchronized void processSolution(Route partial) {
 		printSolution(partial);
+		if (frontier != null) {
+			int days = travelDays(partial);
+			int length = tripLength(partial);
+			if (frontier.offer(days, length, partial.toArray())) {
+				System.out.println("Best solution in " + days + " days is " + length);
+			}
+			if (!foundSolution) {
+				foundSolution = true;
+				writePruningData();
+			}
+			return;
+		}
 		if (!foundSolution) {
+			bestSolution = partial.copy();
+			bestSolutionLength = tripLength(bestSolution);
+			bestTripLength.set(Math.min(bestSolutionLength, bestTripLength.get()));
 			foundSolution = true;
-			bestSolution.clear();
-			bestSolution.addAll(partial);
-			int tripLength = tripLength(bestSolution);
-			bestTripLength = Math.min(tripLength, bestTripLength);
-			System.out.println(tripLength);
+			System.out.println(bestSolutionLength);
 			writePruningData();
 		} else {
 			int newTripLength = tripLength(partial);
-			if (newTripLength <= bestTripLength) {
-				bestSolution.clear();
-				bestSolution.addAll(partial);
-				System.out.println("Best solution is " + newTripLength + ", prev was " + bestTripLength);
-				bestTripLength = newTripLength;
+			// Ties go to the solution that the sequential search would have
+			// found last, so the parallel search returns the same route. They
+			// are decided against the incumbent's own length, because the
+			// bound may still be the shorter args[1].
+			if (newTripLength < bestSolutionLength
+					|| (newTripLength == bestSolutionLength && compareSolutions(partial, bestSolution) > 0)) {
+				bestSolution = partial.copy();
+				System.out.println("Best solution is " + newTripLength + ", prev was " + bestSolutionLength);
+				bestSolutionLength = newTripLength;
+				bestTripLength.set(Math.min(newTripLength, bestTripLength.get()));
 			}
 		}
 	}
 
+	// Orders solutions the same way the backtracking algorithm visits them.
+	private static int compareSolutions(Route s1, Route s2) {
+		for (int i = 0; i < s1.size() && i < s2.size(); i++) {
+			int diff = s1.get(i) - s2.get(i);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return s1.size() - s2.size();
+	}
+
 	// The first extension of a given partial solution. Looks for the very next
 	// game that can be added.
-	private static List<Game> firstExtension(List<Game> partial) {
+	private static Route firstExtension(Route partial) {
 		int index = 0;
 		if (partial.size() > 0) {
-			index = games.indexOf(partial.get(partial.size() - 1)) + 1;
+			index = partial.last() + 1;
 		}
 		return extendSolution(partial, index);
 	}
 
 	// Replace the current endpoint of this partial solution with the "next"
 	// one. Returns null if no other options are available.
-	private static List<Game> nextExtension(List<Game> partial) {
-		int index = games.indexOf(partial.remove(partial.size() - 1)) + 1;
+	private static Route nextExtension(Route partial) {
+		int index = partial.pop() + 1;
 		if (partial.isEmpty()) {
 			maxSize = 0;
-			if (games.get(index - 1).dayOfYear() != games.get(index).dayOfYear()) {
+			if (schedule.day(index - 1) != schedule.day(index)) {
 				recalculateFailureCriteria(index);
 			}
 		}
@@ -445,20 +1105,15 @@ public class BacktrackingRunner {
 	// at the specified index. The first valid extension is returned. If no
 	// valid extension exists, the partial solution is added to noExtensions and
 	// null is returned.
-	private static List<Game> extendSolution(List<Game> partial, int index) {
+	static Route extendSolution(Route partial, int index) {
 		if (partial.size() == 0) {
-			partial.add(games.get(index));
+			partial.push(index);
 			return partial;
 		}
-		Game last = partial.get(partial.size() - 1);
-		int lastDay = partial.get(0).dayOfYear() + maxNumDays;
-		Game candidate = games.get(index++);
-		while (candidate.dayOfYear() < lastDay && index < games.size()) {
-			if (!haveVisitedStadium(partial, candidate.getStadium()) && last.canReach(candidate)) {
-				partial.add(candidate);
-				return partial;
-			}
-			candidate = games.get(index++);
+		int next = nextCandidate(partial, index);
+		if (next >= 0) {
+			partial.push(next);
+			return partial;
 		}
 		if (!foundSolution) {
 			addToParity(partial);
@@ -466,51 +1121,67 @@ public class BacktrackingRunner {
 		return null;
 	}
 
+	// Looks in the master game list starting at the specified index for a game
+	// that can be added to the (non-empty) partial solution. Returns the index
+	// of that game, or -1 if none exists.
+	private static int nextCandidate(Route partial, int index) {
+		int last = partial.last();
+		int lastDay = schedule.day(partial.first()) + maxNumDays;
+		// the last game of the schedule is never considered, as before
+		for (; index < schedule.size() - 1 && schedule.day(index) < lastDay; index++) {
+			if (!partial.hasVisited(schedule.stadiumIndex(index)) && reachability.canReach(last, index)) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
 	// noExtensions stores known invalid partial solutions. The key is the
-	// master index of the last game in the solution. The value in the map is a
+	// master index of the last game in the solution. Stored under each key is a
 	// set of integers - each integer represents a set of stadiums visited in a
 	// partial solution that ends at the game specified by the key. If two
 	// partial solutions end with the same game and visit the same set of
 	// stadiums, they are equivalent (as long as both start on the same day!)
-	private static void addToParity(List<Game> partial) {
+	// A new entry replaces any entries that visit a subset of its stadiums.
+	private static void addToParity(Route partial) {
 		if (partial.size() < 3) {
 			return;
 		}
-		short key = (short) games.indexOf(partial.get(partial.size() - 1));
-		if (noExtensions.containsKey(key)) {
-			noExtensions.get(key).add(calculateValue(partial));
-		} else {
-			TIntSet entry = new TIntHashSet();
-			entry.add(calculateValue(partial));
-			noExtensions.put(key, entry);
-		}
-	}
-
-	// The value of a partial is an int representing which stadiums have been
-	// visited. The nth bit of the int represents whether the nth stadium has
-	// been visited.
-	private static int calculateValue(List<Game> partial) {
-		int val = 0;
-		for (Game g : partial) {
-			val ^= g.getStadium().getMask();
+		short key = (short) partial.last();
+		long val = partial.visited();
+		FailureCriteria c = criteriaFor(partial);
+		c.noExtensionsLock.writeLock().lock();
+		try {
+			// only the start day searched on its own is saved to
+			// noExtensions.dat
+			if (c.noExtensions.add(key, val) && c == criteria && pruningLog != null && pruningLog.isOpen()) {
+				pruningLog.append(key, val);
+			} else if (!reportedFullStore && c.noExtensions.isFull()) {
+				reportedFullStore = true;
+				System.out.println("noExtensions is full at " + c.noExtensions.size()
+						+ " entries, new invalid candidates will not be kept");
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			c.noExtensionsLock.writeLock().unlock();
 		}
-		return val;
 	}
 
-	private static void printPartial(List<Game> partial) {
+	private static void printPartial(Route partial) {
 		StringBuilder sb = new StringBuilder(tripLength(partial).toString());
 		while (sb.length() < 6) {
 			sb.append(" ");
 		}
-		int startDay = partial.get(0).dayOfYear();
-		int endDay = partial.get(partial.size() - 1).dayOfYear();
+		int startDay = schedule.day(partial.get(0));
+		int endDay = schedule.day(partial.last());
 		int currentIndex = 0;
 		for (int i = startDay; i <= endDay; i++) {
-			if (currentIndex + 1 < partial.size() && partial.get(currentIndex + 1).dayOfYear() == i) {
-				sb.append("(").append(partial.get(currentIndex++).getStadium().toString()).append(" ")
-						.append(partial.get(currentIndex++).getStadium().toString()).append(") ");
-			} else if (partial.get(currentIndex).dayOfYear() == i) {
-				sb.append(partial.get(currentIndex++).getStadium().toString()).append(" ");
+			if (currentIndex + 1 < partial.size() && schedule.day(partial.get(currentIndex + 1)) == i) {
+				sb.append("(").append(venues.code(schedule.stadiumIndex(partial.get(currentIndex++)))).append(" ")
+						.append(venues.code(schedule.stadiumIndex(partial.get(currentIndex++)))).append(") ");
+			} else if (schedule.day(partial.get(currentIndex)) == i) {
+				sb.append(venues.code(schedule.stadiumIndex(partial.get(currentIndex++)))).append(" ");
 			} else {
 				sb.append("drive ");
 			}
@@ -521,100 +1192,134 @@ public class BacktrackingRunner {
 
 	}
 
-	// The total trip length is padded with distance from Baltimore to the
-	// starting stadium, and from the ending stadium to Baltimore. However, if
+	// The total trip length is padded with distance from home (Baltimore) to
+	// the starting stadium, and from the ending stadium to home. However, if
 	// the partial solution is not complete, the "post-trip" padding can be
 	// increased. For any stadium not in the trip, the padding must be at least
 	// the distance from the current endpoint to the unvisited stadium, plus
-	// the distance from the unvisited stadium to Baltimore.
-	private static Integer tripLength(List<Game> partial) {
+	// the distance from the unvisited stadium to home. It must also be at
+	// least the spanning tree bound over all of the unvisited stadiums.
+	static Integer tripLength(Route partial) {
 		if (partial.size() < 2) {
 			return 0;
 		}
-		EnumSet<Stadium> notVisited = EnumSet.allOf(Stadium.class);
-		Integer tripLength = 0;
-		for (int i = 0; i < partial.size(); i++) {
-			if (i == 0) {
-				tripLength += Stadium.BAL.getMinutesTo(partial.get(0).getStadium());
-			} else {
-				tripLength += partial.get(i - 1).getMinutesTo(partial.get(i));
-			}
-			notVisited.remove(partial.get(i).getStadium());
-		}
+		long notVisited = allStadiumsMask & ~partial.visited();
 		int padding = 0;
-		Stadium last = partial.get(partial.size() - 1).getStadium();
-		if (!notVisited.isEmpty()) {
-			for (Stadium s : notVisited) {
-				padding = Math.max(padding, last.getMinutesTo(s) + s.getMinutesTo(Stadium.BAL));
+		int last = schedule.stadiumIndex(partial.last());
+		if (notVisited != 0) {
+			padding = drivingBound.remaining(last, notVisited);
+			int home = venues.home();
+			while (notVisited != 0) {
+				int s = Long.numberOfTrailingZeros(notVisited);
+				padding = Math.max(padding, drivingTimes.fastest(last, s) + drivingTimes.fastest(s, home));
+				notVisited &= notVisited - 1;
 			}
 		} else {
-			padding = last.getMinutesTo(Stadium.BAL);
+			padding = schedule.minutesHome(partial.last());
 		}
-		return tripLength + padding;
+		return partial.drivingMinutes() + padding;
 	}
 
-	private static boolean haveVisitedStadium(List<Game> partial, Stadium stadium) {
-		for (Game g : partial) {
-			if (g.getStadium() == stadium) {
-				return true;
+	// Prints the trips on the frontier, fewest days first.
+	private static void printFrontier() {
+		for (int days : frontier.days()) {
+			System.out.println(days + " days, " + frontier.length(days) + " minutes:");
+			for (int g : frontier.route(days)) {
+				System.out.println(schedule.game(g));
 			}
 		}
-		return false;
 	}
 
-	private static void printSolution(List<Game> partial) {
-		for (Game g : partial) {
-			System.out.println(g);
+	private static void printSolution(Route partial) {
+		for (int i = 0; i < partial.size(); i++) {
+			System.out.println(schedule.game(partial.get(i)));
 		}
 	}
 
-	private static int travelDays(List<Game> partial) {
-		int partialSize = partial.size();
-		if (partialSize == 0) {
+	private static int travelDays(Route partial) {
+		if (partial.isEmpty()) {
 			return 0;
 		}
+		return travelDays(partial.first(), partial.last(), partial.size());
+	}
+
+	// The number of days, including driving from and to home, of a
+	// route of the specified size between two games. The drive home is only
+	// counted for complete routes.
+	static int travelDays(int firstGame, int lastGame, int partialSize) {
 		int offset = 1;
-		Game firstGame = partial.get(0);
-		int travelToStart = Stadium.BAL.getMinutesTo(firstGame.getStadium());
-		int firstTimeAvailable = Minutes
-				.minutesBetween(firstGame.getDate().withMillisOfDay(NINE_AM), firstGame.getDate())
-				.getMinutes();
+		// the drive to the first game can start at any time
+		int travelToStart = drivingTimes.fastest(venues.home(), schedule.stadiumIndex(firstGame));
+		int firstTimeAvailable = schedule.minuteOfDay(firstGame) - NINE_AM;
 		while (firstTimeAvailable < travelToStart) {
 			offset++;
 			travelToStart -= 720;
 		}
-		if (partial.size() == 1) {
+		if (partialSize == 1) {
 			return offset;
 		}
-		if (partialSize == 30) {
-			Game lastGame = partial.get(partial.size() - 1);
-			int travelFromEnd = lastGame.getStadium().getMinutesTo(Stadium.BAL);
-			if (!lastGame.getStadium().equals(Stadium.BAL) && !lastGame.getStadium().equals(Stadium.WAS)
-					&& !lastGame.getStadium().equals(Stadium.PHI)) {
-				int lastTimeAvailable = Minutes.minutesBetween(lastGame.getDate().plusHours(4),
-						lastGame.getDate().withMillisOfDay(TEN_PM)).getMinutes();
+		if (partialSize == numStadiums) {
+			int travelFromEnd = schedule.minutesHome(lastGame);
+			if (venues.minutes(schedule.stadiumIndex(lastGame), venues.home()) > NEAR_HOME) {
+				int lastTimeAvailable = TEN_PM - (schedule.minuteOfDay(lastGame) + 240);
 				while (lastTimeAvailable < travelFromEnd) {
 					offset++;
 					travelFromEnd -= 720;
 				}
 			}
 		}
-		return partial.get(partial.size() - 1).dayOfYear() - partial.get(0).dayOfYear() + offset;
+		return schedule.day(lastGame) - schedule.day(firstGame) + offset;
 	}
 
+	// Rewrites noExtensions.dat with the current contents of noExtensions. No
+	// more entries are added after this.
 	private static void writePruningData() {
-			try {
-				File file = new File(NO_EXTENSIONS_FILE_NAME);
-				if (file.exists()) {
-					file.delete();
+		noExtensionsLock.writeLock().lock();
+		try {
+			if (pruningLog != null && pruningLog.isOpen()) {
+				pruningLog.compact(noExtensions, pruningLog.startDay(), pruningLog.numDays());
+				pruningLog.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			noExtensionsLock.writeLock().unlock();
+		}
+	}
+
+	// Forces appended entries to disk. Once most of the file is made up of
+	// entries that have been replaced, it is compacted.
+	private static void checkpointPruningData() {
+		noExtensionsLock.writeLock().lock();
+		try {
+			if (pruningLog != null && pruningLog.isOpen()) {
+				if (pruningLog.records() > 2L * noExtensions.size() + (1 << 16)) {
+					pruningLog.compact(noExtensions, pruningLog.startDay(), pruningLog.numDays());
+				} else {
+					pruningLog.checkpoint();
 				}
-				FileOutputStream fos = new FileOutputStream(NO_EXTENSIONS_FILE_NAME);
-				ObjectOutputStream oos = new ObjectOutputStream(fos);
-				oos.writeObject(noExtensions);
-				oos.close();
-			} catch (IOException e) {
-				e.printStackTrace();
 			}
-			
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			noExtensionsLock.writeLock().unlock();
+		}
+	}
+
+	// Appends a snapshot of the search metrics to metrics.jsonl
+	private static void writeMetrics() {
+		int size;
+		noExtensionsLock.readLock().lock();
+		try {
+			size = noExtensions.size();
+		} finally {
+			noExtensionsLock.readLock().unlock();
+		}
+		try (FileWriter fw = new FileWriter(outputFile(outputDir, METRICS_FILE_NAME), true)) {
+			fw.write(metrics.snapshot(size));
+			fw.write(System.lineSeparator());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 }
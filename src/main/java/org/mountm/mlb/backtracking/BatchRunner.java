@@ -0,0 +1,230 @@
+package org.mountm.mlb.backtracking;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs one of the other runners on several schedule files in one JVM:
+ *
+ * <pre>
+ * BatchRunner [--threads=n] [--output=dir] runner schedule... [-- runner arguments]
+ * </pre>
+ *
+ * The runner is backtracking, dp, lp, lp-distance or convert. Each schedule
+ * gets its own directory under the output directory (batch by default), named
+ * after the schedule file, and the runner is given --games and --output-dir
+ * so that its files (routes, LP files, pruning stores, checkpoints) and its
+ * output (output.txt) go there. Up to --threads schedules are run at a time.
+ *
+ * The runners keep their state in static fields, so each schedule loads its
+ * own copy of the runner classes. Everything else in this package, the
+ * stadium matrix and the driving times included, has no per-run state and is
+ * loaded once and shared by every schedule.
+ *
+ */
+public class BatchRunner {
+
+	private static final String PACKAGE = BatchRunner.class.getPackage().getName() + ".";
+	// the classes with per-run state, and their nested classes
+	private static final Set<String> PER_RUN_CLASSES = new HashSet<>(Arrays.asList("BacktrackingRunner",
+			"DynamicProgrammingRunner", "LinearProgramRunner", "LPDistanceRunner", "TimeZoneConverter",
+			"FailureCriteria"));
+
+	// each schedule's output.txt, for the threads running it
+	private static final InheritableThreadLocal<PrintStream> scheduleOutput = new InheritableThreadLocal<>();
+
+	public static void main(String[] args) {
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		File outputRoot = new File("batch");
+		int i = 0;
+		for (; i < args.length && args[i].startsWith("--"); i++) {
+			if (args[i].startsWith("--threads=")) {
+				numThreads = Integer.parseInt(args[i].substring("--threads=".length()));
+			} else if (args[i].startsWith("--output=")) {
+				outputRoot = new File(args[i].substring("--output=".length()));
+			} else {
+				System.out.println("Ignoring unknown option " + args[i]);
+			}
+		}
+		if (i == args.length) {
+			System.out.println("Usage: BatchRunner [--threads=n] [--output=dir] runner schedule... [-- runner arguments]");
+			return;
+		}
+		String runner = runnerClass(args[i++]);
+		if (runner == null) {
+			System.out.println("Unknown runner " + args[i - 1]
+					+ ", expected backtracking, dp, lp, lp-distance or convert");
+			return;
+		}
+		List<File> schedules = new ArrayList<>();
+		for (; i < args.length && !args[i].equals("--"); i++) {
+			schedules.add(new File(args[i]));
+		}
+		String[] runnerArgs = i < args.length ? Arrays.copyOfRange(args, i + 1, args.length) : new String[0];
+
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {
+				target(console).write(b);
+			}
+
+			public void write(byte[] b, int off, int len) {
+				target(console).write(b, off, len);
+			}
+
+			public void flush() {
+				target(console).flush();
+			}
+		}, true));
+
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		List<Future<String>> results = new ArrayList<>(schedules.size());
+		Set<String> names = new HashSet<>();
+		for (File schedule : schedules) {
+			File dir = new File(outputRoot, directoryName(schedule, names));
+			results.add(executor.submit(() -> run(runner, schedule, dir, runnerArgs)));
+		}
+		executor.shutdown();
+
+		for (int s = 0; s < schedules.size(); s++) {
+			try {
+				System.out.println(results.get(s).get());
+			} catch (ExecutionException e) {
+				System.out.println(schedules.get(s) + ": failed");
+				e.getCause().printStackTrace();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		System.setOut(console);
+	}
+
+	// Runs the runner on one schedule, with its own copy of the runner
+	// classes and its output going to output.txt in its directory.
+	private static String run(String runner, File schedule, File dir, String[] runnerArgs) throws Exception {
+		long start = System.currentTimeMillis();
+		dir.mkdirs();
+		String[] args = Arrays.copyOf(runnerArgs, runnerArgs.length + 2);
+		args[runnerArgs.length] = "--games=" + schedule.getPath();
+		args[runnerArgs.length + 1] = "--output-dir=" + dir.getPath();
+		try (PrintStream output = new PrintStream(new FileOutputStream(new File(dir, "output.txt")), true)) {
+			scheduleOutput.set(output);
+			try {
+				Class<?> main = new PerRunClassLoader(BatchRunner.class.getClassLoader()).loadClass(runner);
+				main.getMethod("main", String[].class).invoke(null, (Object) args);
+			} catch (InvocationTargetException e) {
+				e.getCause().printStackTrace(output);
+				throw e;
+			} finally {
+				scheduleOutput.remove();
+			}
+		}
+		return schedule + ": " + dir + ", " + (System.currentTimeMillis() - start) + " ms";
+	}
+
+	private static PrintStream target(PrintStream console) {
+		PrintStream output = scheduleOutput.get();
+		return output == null ? console : output;
+	}
+
+	private static String runnerClass(String name) {
+		switch (name) {
+		case "backtracking":
+			return PACKAGE + "BacktrackingRunner";
+		case "dp":
+			return PACKAGE + "DynamicProgrammingRunner";
+		case "lp":
+			return PACKAGE + "LinearProgramRunner";
+		case "lp-distance":
+			return PACKAGE + "LPDistanceRunner";
+		case "convert":
+			return PACKAGE + "TimeZoneConverter";
+		default:
+			return null;
+		}
+	}
+
+	// The schedule file name without its extension, with a number added if
+	// another schedule already has that name.
+	private static String directoryName(File schedule, Set<String> names) {
+		String name = schedule.getName();
+		if (name.lastIndexOf('.') > 0) {
+			name = name.substring(0, name.lastIndexOf('.'));
+		}
+		String unique = name;
+		for (int n = 2; !names.add(unique); n++) {
+			unique = name + "-" + n;
+		}
+		return unique;
+	}
+
+	// Defines its own copy of the classes with per-run state from the same
+	// class files, and leaves every other class to the parent.
+	private static class PerRunClassLoader extends ClassLoader {
+
+		PerRunClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (!isPerRun(name)) {
+				return super.loadClass(name, resolve);
+			}
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> c = findLoadedClass(name);
+				if (c == null) {
+					byte[] bytes = classFile(name);
+					c = defineClass(name, bytes, 0, bytes.length);
+				}
+				if (resolve) {
+					resolveClass(c);
+				}
+				return c;
+			}
+		}
+
+		private static boolean isPerRun(String name) {
+			if (!name.startsWith(PACKAGE)) {
+				return false;
+			}
+			String simpleName = name.substring(PACKAGE.length());
+			int nested = simpleName.indexOf('$');
+			return PER_RUN_CLASSES.contains(nested < 0 ? simpleName : simpleName.substring(0, nested));
+		}
+
+		private byte[] classFile(String name) throws ClassNotFoundException {
+			try (InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+				if (in == null) {
+					throw new ClassNotFoundException(name);
+				}
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+				int n;
+				while ((n = in.read(buffer)) > 0) {
+					bytes.write(buffer, 0, n);
+				}
+				return bytes.toByteArray();
+			} catch (IOException e) {
+				throw new ClassNotFoundException(name, e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+package org.mountm.mlb.backtracking;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * The pairs of games in a schedule that cannot both be in a trip, because
+ * neither can be reached from the other. Built once per schedule from a
+ * {@link ReachabilityIndex}, and stored in compressed sparse row form: the
+ * conflicts of each game are the later games between it and its horizon that
+ * it cannot reach.
+ *
+ * The conflicts are also covered by cliques, groups of games that all
+ * conflict with each other. At most one game in a clique can be in a trip, so
+ * one constraint per clique replaces a constraint for every pair in it. Every
+ * conflicting pair is in at least one clique.
+ *
+ */
+public class ConflictGraph {
+
+	private final int[] offsets;
+	private final int[] targets;
+	private final int[] cliqueOffsets;
+	private final int[] cliqueMembers;
+
+	public ConflictGraph(ReachabilityIndex reachability) {
+		int n = reachability.size();
+		offsets = new int[n + 1];
+		TIntList edges = new TIntArrayList(n * 16);
+		for (int i = 0; i < n; i++) {
+			for (int j = i + 1; j < reachability.horizon(i); j++) {
+				if (!reachability.canReach(i, j)) {
+					edges.add(j);
+				}
+			}
+			offsets[i + 1] = edges.size();
+		}
+		targets = edges.toArray();
+
+		// Greedy clique cover. Each uncovered conflict of a game starts a
+		// clique, which is grown with the game's other conflicts that conflict
+		// with everything already in it.
+		boolean[] covered = new boolean[targets.length];
+		TIntList cliqueStarts = new TIntArrayList(n * 4);
+		TIntList members = new TIntArrayList(n * 16);
+		TIntArrayList clique = new TIntArrayList();
+		for (int i = 0; i < n; i++) {
+			for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+				if (covered[e]) {
+					continue;
+				}
+				clique.resetQuick();
+				clique.add(i);
+				clique.add(targets[e]);
+				for (int f = e + 1; f < offsets[i + 1]; f++) {
+					if (conflictsWithAll(reachability, clique, targets[f])) {
+						clique.add(targets[f]);
+					}
+				}
+				// members are in increasing order, so each pair is an edge
+				// of the earlier game
+				for (int a = 0; a < clique.size(); a++) {
+					for (int b = a + 1; b < clique.size(); b++) {
+						covered[edge(clique.get(a), clique.get(b))] = true;
+					}
+				}
+				cliqueStarts.add(members.size());
+				members.addAll(clique);
+			}
+		}
+		cliqueStarts.add(members.size());
+		cliqueOffsets = cliqueStarts.toArray();
+		cliqueMembers = members.toArray();
+	}
+
+	/**
+	 * @return the number of conflicting pairs
+	 */
+	public int numConflicts() {
+		return targets.length;
+	}
+
+	/**
+	 * @return the number of later games that cannot be reached from the
+	 *         specified game
+	 */
+	public int numConflicts(int game) {
+		return offsets[game + 1] - offsets[game];
+	}
+
+	/**
+	 * @return the k-th game after the specified one that it cannot reach
+	 */
+	public int conflict(int game, int k) {
+		return targets[offsets[game] + k];
+	}
+
+	public int numCliques() {
+		return cliqueOffsets.length - 1;
+	}
+
+	public int cliqueSize(int clique) {
+		return cliqueOffsets[clique + 1] - cliqueOffsets[clique];
+	}
+
+	/**
+	 * @return the k-th game in the clique. Games are in increasing order.
+	 */
+	public int cliqueMember(int clique, int k) {
+		return cliqueMembers[cliqueOffsets[clique] + k];
+	}
+
+	private static boolean conflictsWithAll(ReachabilityIndex reachability, TIntList clique, int game) {
+		// the first member is the game whose conflicts are being grouped
+		for (int k = 1; k < clique.size(); k++) {
+			if (reachability.canReach(clique.get(k), game)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// the position of the pair (from, to) in targets
+	private int edge(int from, int to) {
+		int low = offsets[from];
+		int high = offsets[from + 1] - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (targets[mid] < to) {
+				low = mid + 1;
+			} else if (targets[mid] > to) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		throw new IllegalStateException(from + " and " + to + " do not conflict");
+	}
+
+}
@@ -0,0 +1,101 @@
+package org.mountm.mlb.backtracking;
+
+import gnu.trove.TLongCollection;
+import gnu.trove.iterator.TLongIterator;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Upper bound on the number of double headers that can still be added to a
+ * trip. Each pair of stadiums that can be visited on the same day is an edge
+ * in a graph over the stadiums; no stadium can be part of two double headers,
+ * so the bound is the size of a maximum matching on the stadiums that have
+ * not been visited yet.
+ *
+ * The matching is found with a dynamic program over stadium masks. Results
+ * are cached by mask in a fixed-size table that can be shared by several
+ * search threads. The mask and the result share one long, so masks that
+ * include stadiums past the 58th are not cached.
+ *
+ */
+public class DoubleHeaderBound {
+
+	private static final int CACHE_BITS = 16;
+	private static final int MASK_BITS = 58;
+	private static final long CACHED_MASKS = (1L << MASK_BITS) - 1;
+
+	// adjacent[s] has a bit set for every stadium that can share a double
+	// header with stadium s
+	private final long[] adjacent = new long[Long.SIZE];
+	private final long hasDoubleHeader;
+	// Each entry is a mask in the low 58 bits and the matching size plus one
+	// in the high 6 bits. Zero means the entry is empty.
+	private final AtomicLongArray cache = new AtomicLongArray(1 << CACHE_BITS);
+
+	/**
+	 * @param possibleDHs
+	 *            The pairs of stadiums that can be visited on the same day, as
+	 *            masks. Masks that do not contain exactly two stadiums are
+	 *            ignored.
+	 */
+	public DoubleHeaderBound(TLongCollection possibleDHs) {
+		long stadiums = 0;
+		for (TLongIterator it = possibleDHs.iterator(); it.hasNext();) {
+			long mask = it.next();
+			if (Long.bitCount(mask) == 2) {
+				adjacent[Long.numberOfTrailingZeros(mask)] |= Long.highestOneBit(mask);
+				adjacent[63 - Long.numberOfLeadingZeros(mask)] |= Long.lowestOneBit(mask);
+				stadiums |= mask;
+			}
+		}
+		hasDoubleHeader = stadiums;
+	}
+
+	/**
+	 * @param visited
+	 *            The stadiums that can no longer be part of a double header.
+	 * @return the largest number of double headers that can be formed from
+	 *         the remaining stadiums.
+	 */
+	public int maxRemaining(long visited) {
+		return maxMatching(hasDoubleHeader & ~visited);
+	}
+
+	private int maxMatching(long available) {
+		// stadiums with no available partner can't be matched
+		long candidates = 0;
+		for (long rest = available; rest != 0; rest &= rest - 1) {
+			int s = Long.numberOfTrailingZeros(rest);
+			if ((adjacent[s] & available) != 0) {
+				candidates |= 1L << s;
+			}
+		}
+		if (candidates == 0) {
+			return 0;
+		}
+		boolean cached = (candidates & ~CACHED_MASKS) == 0;
+		int slot = (int) ((candidates * 0x9E3779B97F4A7C15L) >>> (64 - CACHE_BITS));
+		if (cached) {
+			long entry = cache.get(slot);
+			if ((entry & CACHED_MASKS) == candidates && (entry >>> MASK_BITS) != 0) {
+				return (int) (entry >>> MASK_BITS) - 1;
+			}
+		}
+
+		// either the first stadium is left out, or it is paired with one of
+		// its neighbors
+		int s = Long.numberOfTrailingZeros(candidates);
+		long rest = candidates & ~(1L << s);
+		int result = maxMatching(rest);
+		for (long neighbors = adjacent[s] & rest; neighbors != 0; neighbors &= neighbors - 1) {
+			int t = Long.numberOfTrailingZeros(neighbors);
+			result = Math.max(result, 1 + maxMatching(rest & ~(1L << t)));
+		}
+
+		if (cached) {
+			cache.set(slot, ((long) (result + 1) << MASK_BITS) | candidates);
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,131 @@
+package org.mountm.mlb.backtracking;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lower bound on the driving still needed to finish a trip: from the last
+ * stadium in the route, through every stadium that has not been visited, and
+ * back to Baltimore.
+ *
+ * Any such path is a spanning tree of the stadiums it touches, so a minimum
+ * spanning tree (using the shorter direction of each pair) is a lower bound.
+ * The bound is tightened by taking the first leg out of the tree: the rest of
+ * the path spans the unvisited stadiums and Baltimore, and the first leg is
+ * at least the shortest drive from the last stadium to an unvisited one. The
+ * same is done for the final leg into Baltimore, and the larger of the two is
+ * used. Neither bound depends on the triangle inequality.
+ *
+ * With time-dependent {@link DrivingTimes} the fastest time between each pair
+ * is used, so the bound holds whenever the drives start.
+ *
+ * Results are cached by last stadium and unvisited mask in a fixed-size table
+ * that can be shared by several search threads. The key and the bound share
+ * one long, so circuits too large for that (more than 38 venues) are not
+ * cached.
+ *
+ */
+public class DrivingBound {
+
+	private static final int CACHE_BITS = 20;
+
+	private final int numStadiums;
+	private final int home;
+	private final int[][] minutes;
+	// the shorter of the two directions between each pair
+	private final int[][] undirected;
+	// Each entry is the key (last stadium and unvisited mask) in the high bits
+	// and the bound plus one in the low 20 bits. Zero means the entry is empty.
+	// Null if the key does not fit.
+	private final AtomicLongArray cache;
+
+	public DrivingBound() {
+		this(DrivingTimes.STATIC);
+	}
+
+	public DrivingBound(DrivingTimes times) {
+		numStadiums = times.venues().size();
+		home = times.venues().home();
+		minutes = new int[numStadiums][numStadiums];
+		undirected = new int[numStadiums][numStadiums];
+		for (int i = 0; i < numStadiums; i++) {
+			for (int j = 0; j < numStadiums; j++) {
+				minutes[i][j] = times.fastest(i, j);
+			}
+		}
+		for (int i = 0; i < numStadiums; i++) {
+			for (int j = 0; j < numStadiums; j++) {
+				undirected[i][j] = Math.min(minutes[i][j], minutes[j][i]);
+			}
+		}
+		int stadiumBits = 32 - Integer.numberOfLeadingZeros(numStadiums - 1);
+		cache = numStadiums + stadiumBits + CACHE_BITS <= Long.SIZE ? new AtomicLongArray(1 << CACHE_BITS) : null;
+	}
+
+	/**
+	 * @param from
+	 *            The index of the last stadium in the route
+	 * @param unvisited
+	 *            The stadiums that still have to be visited. Must not contain
+	 *            the last stadium.
+	 * @return a lower bound on the driving time from the last stadium, through
+	 *         every unvisited stadium, to Baltimore
+	 */
+	public int remaining(int from, long unvisited) {
+		if (unvisited == 0) {
+			return minutes[from][home];
+		}
+		long key = ((long) from << numStadiums) | unvisited;
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - CACHE_BITS));
+		if (cache != null) {
+			long entry = cache.get(slot);
+			if ((entry >>> CACHE_BITS) == key && entry != 0) {
+				return (int) (entry & ((1 << CACHE_BITS) - 1)) - 1;
+			}
+		}
+
+		int firstLeg = Integer.MAX_VALUE;
+		int lastLeg = Integer.MAX_VALUE;
+		for (long rest = unvisited; rest != 0; rest &= rest - 1) {
+			int s = Long.numberOfTrailingZeros(rest);
+			firstLeg = Math.min(firstLeg, minutes[from][s]);
+			lastLeg = Math.min(lastLeg, minutes[s][home]);
+		}
+		int withoutFirstLeg = spanningTree(unvisited | (1L << home)) + firstLeg;
+		int withoutLastLeg = spanningTree(unvisited | (1L << from)) + lastLeg;
+		int result = Math.max(withoutFirstLeg, withoutLastLeg);
+
+		if (cache != null) {
+			cache.set(slot, (key << CACHE_BITS) | (result + 1));
+		}
+		return result;
+	}
+
+	// Prim's algorithm on the stadiums in the mask
+	private int spanningTree(long nodes) {
+		int[] distance = new int[numStadiums];
+		int first = Long.numberOfTrailingZeros(nodes);
+		long outside = nodes & ~(1L << first);
+		for (long rest = outside; rest != 0; rest &= rest - 1) {
+			int s = Long.numberOfTrailingZeros(rest);
+			distance[s] = undirected[first][s];
+		}
+		int weight = 0;
+		while (outside != 0) {
+			int closest = -1;
+			for (long rest = outside; rest != 0; rest &= rest - 1) {
+				int s = Long.numberOfTrailingZeros(rest);
+				if (closest < 0 || distance[s] < distance[closest]) {
+					closest = s;
+				}
+			}
+			weight += distance[closest];
+			outside &= ~(1L << closest);
+			for (long rest = outside; rest != 0; rest &= rest - 1) {
+				int s = Long.numberOfTrailingZeros(rest);
+				distance[s] = Math.min(distance[s], undirected[closest][s]);
+			}
+		}
+		return weight;
+	}
+
+}
@@ -0,0 +1,274 @@
+package org.mountm.mlb.backtracking;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Driving times between stadiums that depend on when the drive starts. The
+ * week is split into hourly buckets by the local day and hour of departure at
+ * the stadium being left, and each bucket has its own matrix. All of the
+ * matrices are stored in one flat array, so a lookup is a single array read.
+ *
+ * {@link #STATIC} uses the {@link Stadium} matrix for every bucket, and
+ * {@link #of(Venues)} the matrix of other venues. Other models start from the
+ * same matrix and are adjusted by a data file with one rule per line, applied
+ * in order:
+ *
+ * <pre>
+ * # day,hours,from,to,minutes
+ * FRI,16-19,CWS,*,x1.35
+ * MON-FRI,7-9,*,NYY,+30
+ * SUN,*,BOS,NYY,240
+ * </pre>
+ *
+ * The day is MON to SUN or a range of them, the hours are local departure
+ * hours (0 to 23) or a range of them, and the stadiums are venue codes. Any of
+ * them can be * for all. The minutes replace the driving time, or with a
+ * leading + or x add to it or multiply it.
+ *
+ */
+public class DrivingTimes {
+
+	private static final int HOURS = 24;
+	private static final int DAYS = 7;
+	private static final int BUCKETS = DAYS * HOURS;
+	private static final String[] DAY_NAMES = { "MON", "TUE", "WED", "THU", "FRI", "SAT", "SUN" };
+	// 1970-01-01 was a Thursday
+	private static final int EPOCH_WEEKDAY = 3;
+
+	// declared after the constants its constructor uses
+	public static final DrivingTimes STATIC = new DrivingTimes(Venues.MLB);
+
+	private final Venues venues;
+	private final int numVenues;
+	// minutes[(bucket * numVenues + from) * numVenues + to]
+	private final int[] minutes;
+	// the least driving time between each pair, over all buckets
+	private final int[] fastest;
+	private int longest;
+	private int checksum;
+
+	private DrivingTimes(Venues venues) {
+		this.venues = venues;
+		numVenues = venues.size();
+		minutes = new int[BUCKETS * numVenues * numVenues];
+		fastest = new int[numVenues * numVenues];
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			for (int from = 0; from < numVenues; from++) {
+				for (int to = 0; to < numVenues; to++) {
+					minutes[index(bucket, from, to)] = venues.minutes(from, to);
+				}
+			}
+		}
+		summarize();
+	}
+
+	/**
+	 * @return the static driving times between the specified venues
+	 */
+	public static DrivingTimes of(Venues venues) {
+		return venues == Venues.MLB ? STATIC : new DrivingTimes(venues);
+	}
+
+	/**
+	 * Reads a model for the MLB stadiums from a data file in the format
+	 * described above.
+	 */
+	public static DrivingTimes read(File file) throws IOException {
+		return read(file, Venues.MLB);
+	}
+
+	/**
+	 * Reads a model for the specified venues from a data file in the format
+	 * described above.
+	 */
+	public static DrivingTimes read(File file, Venues venues) throws IOException {
+		DrivingTimes times = new DrivingTimes(venues);
+		try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+			String currentLine;
+			int lineNumber = 0;
+			while ((currentLine = br.readLine()) != null) {
+				lineNumber++;
+				currentLine = currentLine.trim();
+				if (currentLine.isEmpty() || currentLine.startsWith("#")) {
+					continue;
+				}
+				String[] rule = currentLine.split(",");
+				if (rule.length != 5) {
+					throw new IOException(file + " line " + lineNumber + ": expected day,hours,from,to,minutes");
+				}
+				try {
+					times.apply(rule);
+				} catch (IllegalArgumentException e) {
+					throw new IOException(file + " line " + lineNumber + ": " + e.getMessage());
+				}
+			}
+		}
+		times.summarize();
+		return times;
+	}
+
+	/**
+	 * @param departureMinute
+	 *            The time the drive starts, in minutes since 1970-01-01 on
+	 *            the schedule's clock (see {@link Game#epochMinute()})
+	 * @return the bucket for leaving the specified stadium at that time
+	 */
+	public static int bucket(Stadium from, int departureMinute) {
+		return bucket(from.getTimeZone(), departureMinute);
+	}
+
+	/**
+	 * @return the bucket for leaving a venue in the specified time zone at
+	 *         that time
+	 */
+	public static int bucket(int timeZone, int departureMinute) {
+		// time zones are hours behind the schedule's clock
+		int local = departureMinute - 60 * timeZone;
+		int day = Math.floorDiv(local, 1440);
+		int weekday = Math.floorMod(day + EPOCH_WEEKDAY, DAYS);
+		return weekday * HOURS + (local - 1440 * day) / 60;
+	}
+
+	/**
+	 * @return the driving time when leaving in the specified bucket
+	 */
+	public int minutes(int bucket, Stadium from, Stadium to) {
+		return minutes[index(bucket, from.getIndex(), to.getIndex())];
+	}
+
+	/**
+	 * @return the driving time between two venues when leaving in the
+	 *         specified bucket
+	 */
+	public int minutes(int bucket, int from, int to) {
+		return minutes[index(bucket, from, to)];
+	}
+
+	/**
+	 * @return the driving time when leaving at the specified time
+	 */
+	public int minutes(Stadium from, Stadium to, int departureMinute) {
+		return minutes(bucket(from, departureMinute), from, to);
+	}
+
+	/**
+	 * @return the least driving time between the stadiums at any time of the
+	 *         week, for drives whose start is not known and for lower bounds
+	 */
+	public int fastest(Stadium from, Stadium to) {
+		return fastest(from.getIndex(), to.getIndex());
+	}
+
+	// the same, by venue index
+	public int fastest(int from, int to) {
+		return fastest[from * numVenues + to];
+	}
+
+	public Venues venues() {
+		return venues;
+	}
+
+	/**
+	 * @return the longest driving time in the model
+	 */
+	public int longest() {
+		return longest;
+	}
+
+	/**
+	 * @return a checksum of every driving time in the model
+	 */
+	public int checksum() {
+		return checksum;
+	}
+
+	private int index(int bucket, int from, int to) {
+		return (bucket * numVenues + from) * numVenues + to;
+	}
+
+	private void apply(String[] rule) {
+		int[] days = range(rule[0].trim(), 0, DAYS - 1, true);
+		int[] hours = range(rule[1].trim(), 0, HOURS - 1, false);
+		int[] from = stadiums(rule[2].trim());
+		int[] to = stadiums(rule[3].trim());
+		String value = rule[4].trim();
+		for (int day = days[0]; day <= days[1]; day++) {
+			for (int hour = hours[0]; hour <= hours[1]; hour++) {
+				for (int s1 = from[0]; s1 <= from[1]; s1++) {
+					for (int s2 = to[0]; s2 <= to[1]; s2++) {
+						if (s1 == s2) {
+							continue;
+						}
+						int i = index(day * HOURS + hour, s1, s2);
+						if (value.startsWith("x")) {
+							minutes[i] = (int) Math.round(minutes[i] * Double.parseDouble(value.substring(1)));
+						} else if (value.startsWith("+")) {
+							minutes[i] += Integer.parseInt(value.substring(1));
+						} else {
+							minutes[i] = Integer.parseInt(value);
+						}
+						if (minutes[i] < 0) {
+							throw new IllegalArgumentException("negative driving time");
+						}
+					}
+				}
+			}
+		}
+	}
+
+	// the first and last value in a range such as 16-19, MON-FRI or *
+	private static int[] range(String field, int min, int max, boolean dayNames) {
+		if (field.equals("*")) {
+			return new int[] { min, max };
+		}
+		String[] ends = field.split("-");
+		int first = dayNames ? day(ends[0]) : Integer.parseInt(ends[0]);
+		int last = dayNames ? day(ends[ends.length - 1]) : Integer.parseInt(ends[ends.length - 1]);
+		if (first < min || last > max || first > last) {
+			throw new IllegalArgumentException("bad range " + field);
+		}
+		return new int[] { first, last };
+	}
+
+	private static int day(String name) {
+		for (int d = 0; d < DAYS; d++) {
+			if (DAY_NAMES[d].equals(name)) {
+				return d;
+			}
+		}
+		throw new IllegalArgumentException("unknown day " + name);
+	}
+
+	private int[] stadiums(String field) {
+		if (field.equals("*")) {
+			return new int[] { 0, numVenues - 1 };
+		}
+		int s = venues.index(field);
+		return new int[] { s, s };
+	}
+
+	private void summarize() {
+		longest = 0;
+		for (int from = 0; from < numVenues; from++) {
+			for (int to = 0; to < numVenues; to++) {
+				int least = Integer.MAX_VALUE;
+				for (int bucket = 0; bucket < BUCKETS; bucket++) {
+					least = Math.min(least, minutes[index(bucket, from, to)]);
+					longest = Math.max(longest, minutes[index(bucket, from, to)]);
+				}
+				fastest[from * numVenues + to] = least;
+			}
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(4 * minutes.length);
+		buffer.asIntBuffer().put(minutes);
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array());
+		checksum = (int) crc.getValue();
+	}
+
+}
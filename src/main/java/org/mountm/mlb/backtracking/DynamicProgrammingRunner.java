@@ -0,0 +1,295 @@
+package org.mountm.mlb.backtracking;
+
+import gnu.trove.iterator.TLongLongIterator;
+import gnu.trove.map.hash.TLongLongHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the shortest trip with dynamic programming instead of backtracking.
+ * Two partial solutions that end at the same game and visit the same
+ * stadiums can be completed in exactly the same ways, so only the one with
+ * the least driving needs to be kept. The state is the last game and the
+ * mask of visited stadiums.
+ *
+ * The games are swept in schedule order. Each game has a table from mask to
+ * the least driving that reaches it, and the game it was reached from. When a
+ * game is processed every game before it is final, so its states are
+ * extended to every later game that can be reached. States that cannot beat
+ * the best trip so far, or that break the same rules as
+ * BacktrackingRunner.badSolution, are not stored.
+ *
+ * Takes the same arguments as BacktrackingRunner: the maximum number of
+ * days, the maximum driving time, and optionally the games in the root
+ * candidate, and --venues, --traffic and --games.
+ *
+ */
+public class DynamicProgrammingRunner {
+
+	// an entry in a table is the driving time in the high bits and the
+	// previous game (or -1 for the root) in the low bits
+	private static final long NO_STATE = -1;
+	// bytes used by each stored state, counting the free slots in the table
+	private static final int BYTES_PER_STATE = 34;
+
+	private static int numStadiums;
+	private static Schedule schedule;
+	private static ReachabilityIndex reachability;
+	private static DrivingBound drivingBound;
+	private static int maxNumDays;
+	private static int bestTripLength;
+	private static int[] bestSolution;
+
+	private static long totalStates = 0;
+	private static long largestSearch = 0;
+	private static int largestTable = 0;
+
+	public static void main(String[] args) {
+		String venuesFile = null;
+		String trafficFile = null;
+		String gamesFile = "Games.csv";
+		List<String> positional = new ArrayList<>(args.length);
+		for (String arg : args) {
+			if (arg.startsWith("--traffic=")) {
+				trafficFile = arg.substring("--traffic=".length());
+			} else if (arg.startsWith("--venues=")) {
+				venuesFile = arg.substring("--venues=".length());
+			} else if (arg.startsWith("--games=")) {
+				gamesFile = arg.substring("--games=".length());
+			} else if (arg.startsWith("--output-dir=")) {
+				// nothing is written but the output
+			} else {
+				positional.add(arg);
+			}
+		}
+		args = positional.toArray(new String[positional.size()]);
+		DrivingTimes times = BacktrackingRunner.readDrivingTimes(trafficFile, BacktrackingRunner.readVenues(venuesFile));
+		if (times.venues().size() > Venues.MAX_SEARCH_SIZE) {
+			System.out.println("Dynamic programming handles up to " + Venues.MAX_SEARCH_SIZE + " venues, not "
+					+ times.venues().size());
+			return;
+		}
+		numStadiums = times.venues().size();
+		BacktrackingRunner.readGameInputFile(gamesFile, times);
+		schedule = BacktrackingRunner.getSchedule();
+		reachability = BacktrackingRunner.getReachability();
+		drivingBound = new DrivingBound(times);
+
+		maxNumDays = Integer.parseInt(args[0]);
+		bestTripLength = Integer.parseInt(args[1]);
+		BacktrackingRunner.resetSearch(maxNumDays, bestTripLength, args.length > 2 ? Integer.parseInt(args[2]) : 0);
+
+		Route root = new Route(schedule);
+		for (int i = 2; i < args.length; i++) {
+			int g = Integer.parseInt(args[i]);
+			if (root.hasVisited(schedule.stadiumIndex(g))) {
+				System.out.println("Trying to visit " + schedule.game(g).venueCode() + " twice!");
+				return;
+			}
+			if (!root.isEmpty() && !reachability.canReach(root.last(), g)) {
+				System.out.println("Can't get from " + schedule.game(root.last()) + " to " + schedule.game(g));
+				return;
+			}
+			root.push(g);
+		}
+
+		long start = System.currentTimeMillis();
+		if (!root.isEmpty()) {
+			solve(root);
+		} else {
+			// the last game of the schedule is never considered, as in
+			// BacktrackingRunner
+			for (int first = 0; first < schedule.size() - 1; first++) {
+				if (first > 0 && schedule.day(first - 1) != schedule.day(first)) {
+					BacktrackingRunner.recalculateFailureCriteria(first);
+				}
+				root.push(first);
+				solve(root);
+				root.pop();
+			}
+		}
+
+		System.out.println("Stored " + totalStates + " states in " + (System.currentTimeMillis() - start)
+				+ " ms. The largest search stored " + largestSearch + " states (about "
+				+ (largestSearch * BYTES_PER_STATE >> 20) + " MB), the largest table for one game " + largestTable
+				+ ".");
+		if (bestSolution == null) {
+			System.out.println("No solution.");
+		} else {
+			for (int g : bestSolution) {
+				System.out.println(schedule.game(g));
+			}
+			System.out.println(bestTripLength);
+		}
+	}
+
+	// As in BacktrackingRunner, a trip as long as args[1] is a solution until
+	// one has been found, and after that only shorter trips are.
+	private static boolean improves(int length) {
+		return bestSolution == null ? length <= bestTripLength : length < bestTripLength;
+	}
+
+	// Finds the best completion of the root candidate, if it is better than
+	// the best trip so far.
+	private static void solve(Route root) {
+		int first = root.first();
+		int base = root.last();
+		int lastDay = schedule.day(first) + maxNumDays;
+		int end = base + 1;
+		while (end < schedule.size() - 1 && schedule.day(end) < lastDay) {
+			end++;
+		}
+
+		// the last game at each stadium that can still be in the trip
+		int[] lastGameHere = new int[numStadiums];
+		Arrays.fill(lastGameHere, -1);
+		for (int g = base + 1; g < end; g++) {
+			lastGameHere[schedule.stadiumIndex(g)] = g;
+		}
+		for (int s = 0; s < numStadiums; s++) {
+			if (lastGameHere[s] < 0 && !root.hasVisited(s)) {
+				return;
+			}
+		}
+		if (root.size() == numStadiums) {
+			int length = root.drivingMinutes() + schedule.minutesHome(base);
+			if (improves(length) && BacktrackingRunner.travelDays(first, base, numStadiums) <= maxNumDays) {
+				bestTripLength = length;
+				bestSolution = new int[numStadiums];
+				for (int k = 0; k < numStadiums; k++) {
+					bestSolution[k] = root.get(k);
+				}
+			}
+			return;
+		}
+		if (BacktrackingRunner.travelDays(first, base, root.size()) > maxNumDays
+				|| !isAllowed(first, base, root.visited(), lastGameHere)) {
+			return;
+		}
+
+		TLongLongHashMap[] tables = new TLongLongHashMap[end - base];
+		tables[0] = new TLongLongHashMap(1, 0.5f, 0, NO_STATE);
+		tables[0].put(root.visited(), pack(root.drivingMinutes(), -1));
+		long states = 1;
+
+		for (int i = base; i < end; i++) {
+			if (i > base && schedule.day(i) != schedule.day(i - 1)) {
+				System.out.println("Day " + (schedule.day(i - 1) - schedule.day(first) + 1) + ": " + states
+						+ " states stored");
+			}
+			TLongLongHashMap table = tables[i - base];
+			if (table == null) {
+				continue;
+			}
+			largestTable = Math.max(largestTable, table.size());
+			int from = schedule.stadiumIndex(i);
+			for (TLongLongIterator it = table.iterator(); it.hasNext();) {
+				it.advance();
+				long mask = it.key();
+				int driving = driving(it.value());
+				// the best trip may have improved since this state was stored
+				if (driving + drivingBound.remaining(from, BacktrackingRunner.allStadiumsMask & ~mask) > bestTripLength) {
+					continue;
+				}
+				for (int j = i + 1; j < end; j++) {
+					int to = schedule.stadiumIndex(j);
+					if ((mask & 1L << to) != 0 || !reachability.canReach(i, j)) {
+						continue;
+					}
+					long next = mask | 1L << to;
+					int nextDriving = driving + schedule.drivingMinutes(i, j);
+					if (next == BacktrackingRunner.allStadiumsMask) {
+						int length = nextDriving + schedule.minutesHome(j);
+						if (improves(length)
+								&& BacktrackingRunner.travelDays(first, j, numStadiums) <= maxNumDays) {
+							bestTripLength = length;
+							bestSolution = rebuild(root, tables, base, i, mask, j);
+							System.out.println("Best solution is " + length);
+						}
+						continue;
+					}
+					if (nextDriving + drivingBound.remaining(to, BacktrackingRunner.allStadiumsMask & ~next) > bestTripLength
+							|| BacktrackingRunner.travelDays(first, j, Long.bitCount(next)) > maxNumDays
+							|| !isAllowed(first, j, next, lastGameHere)) {
+						continue;
+					}
+					TLongLongHashMap nextTable = tables[j - base];
+					if (nextTable == null) {
+						nextTable = new TLongLongHashMap(16, 0.5f, 0, NO_STATE);
+						tables[j - base] = nextTable;
+					}
+					long existing = nextTable.get(next);
+					if (existing == NO_STATE) {
+						states++;
+					}
+					if (existing == NO_STATE || nextDriving < driving(existing)) {
+						nextTable.put(next, pack(nextDriving, i));
+					}
+				}
+			}
+		}
+		totalStates += states;
+		largestSearch = Math.max(largestSearch, states);
+	}
+
+	// The double header, west coast and missed stadium rules from
+	// BacktrackingRunner.badSolution. They only depend on the last game and
+	// the stadiums visited: every day between the first and last game that
+	// is not a double header is a rest day, so double headers minus rest days
+	// is the number of games minus one minus the days between them.
+	private static boolean isAllowed(int first, int last, long visited, int[] lastGameHere) {
+		int doubleHeadersLessRestDays = Long.bitCount(visited) - 1 - (schedule.day(last) - schedule.day(first));
+		long lastMask = 1L << schedule.stadiumIndex(last);
+		// the last game may still become part of a double header
+		int possibleRemainingDHs = BacktrackingRunner.getDoubleHeaderBound().maxRemaining(visited & ~lastMask);
+		if (doubleHeadersLessRestDays + possibleRemainingDHs < numStadiums - maxNumDays) {
+			return false;
+		}
+		long westCoastMask = BacktrackingRunner.westCoastMask;
+		if ((westCoastMask & lastMask) == 0) {
+			long needed = westCoastMask & ~visited;
+			if (needed != westCoastMask && needed != 0) {
+				return false;
+			}
+		}
+		for (int s = 0; s < numStadiums; s++) {
+			if ((visited & 1L << s) == 0 && !reachability.canReach(last, lastGameHere[s])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Follows the previous games back to the root. The state that reaches
+	// the last game is at game prev with the specified mask.
+	private static int[] rebuild(Route root, TLongLongHashMap[] tables, int base, int prev, long mask, int last) {
+		int[] games = new int[numStadiums];
+		int size = numStadiums;
+		games[--size] = last;
+		while (prev != -1 && prev != base) {
+			games[--size] = prev;
+			int previous = previous(tables[prev - base].get(mask));
+			mask &= ~(1L << schedule.stadiumIndex(prev));
+			prev = previous;
+		}
+		for (int k = root.size() - 1; k >= 0; k--) {
+			games[--size] = root.get(k);
+		}
+		return games;
+	}
+
+	private static long pack(int driving, int previous) {
+		return ((long) driving << 32) | (previous & 0xFFFFFFFFL);
+	}
+
+	private static int driving(long entry) {
+		return (int) (entry >>> 32);
+	}
+
+	private static int previous(long entry) {
+		return (int) entry;
+	}
+
+}
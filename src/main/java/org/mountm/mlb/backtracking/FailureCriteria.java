@@ -0,0 +1,119 @@
+package org.mountm.mlb.backtracking;
+
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.map.TShortObjectMap;
+import gnu.trove.map.hash.TShortObjectHashMap;
+import gnu.trove.set.TLongSet;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * The failure criteria for trips that start on one day. They all depend on
+ * the start day, so trips that start on different days can be searched at the
+ * same time as long as each start day has its own criteria.
+ *
+ * missedStadiums stores information about the latest point in time at which
+ * each stadium can be visited. The keys are days of the year. The values are
+ * the indices of a set of games. There is one game for each stadium that must
+ * have been visited by the key date. Stadiums with no game left before the
+ * trip has to end are in unplayed instead, and no trip can start on the day
+ * unless it has already been to them.
+ *
+ * possibleDHs holds the pairs of stadiums that can be visited on the same day
+ * during the trip, as masks, and doubleHeaderBound is built from them.
+ *
+ * noExtensions holds the known invalid partial solutions. It also depends on
+ * the starting date of all partial solutions being the same.
+ *
+ */
+class FailureCriteria {
+
+	final int startDay;
+	final TShortObjectMap<int[]> missedStadiums = new TShortObjectHashMap<>(30);
+	final long unplayed;
+	final TLongSet possibleDHs;
+	final DoubleHeaderBound doubleHeaderBound;
+	final MaskTrie noExtensions;
+	// noExtensions is shared by every worker searching this start day
+	final ReadWriteLock noExtensionsLock;
+	private final Venues venues;
+
+	/**
+	 * @param index
+	 *            The first game that starts on the start day
+	 * @param possibleDHs
+	 *            Pairs of stadiums to start from. New pairs are added to this
+	 *            set.
+	 * @param noExtensions
+	 *            An empty store for the known invalid partial solutions
+	 */
+	FailureCriteria(Schedule schedule, ReachabilityIndex reachability, int index, int maxNumDays,
+			TLongSet possibleDHs, MaskTrie noExtensions, ReadWriteLock noExtensionsLock) {
+		this.possibleDHs = possibleDHs;
+		venues = schedule.venues();
+		int numStadiums = venues.size();
+		this.noExtensions = noExtensions;
+		this.noExtensionsLock = noExtensionsLock;
+		int index2 = index;
+		int[] lastGameHere = new int[numStadiums];
+		Arrays.fill(lastGameHere, -1);
+		int firstDay = schedule.day(index);
+		int lastDay = firstDay + maxNumDays;
+		startDay = firstDay;
+		// the last game of the schedule is never considered, as before
+		while (index < schedule.size() - 1 && schedule.day(index) < lastDay) {
+			lastGameHere[schedule.stadiumIndex(index)] = index;
+			index++;
+		}
+		long noGames = 0;
+		for (int j = 0; j < numStadiums; j++) {
+			if (lastGameHere[j] < 0) {
+				noGames |= 1L << j;
+			}
+		}
+		unplayed = noGames;
+		for (int i = 0; i < maxNumDays; i++) {
+			int[] mapEntry = new int[numStadiums];
+			int size = 0;
+			for (int j = 0; j < numStadiums; j++) {
+				if (lastGameHere[j] >= 0 && schedule.day(lastGameHere[j]) - firstDay <= i) {
+					mapEntry[size++] = lastGameHere[j];
+				}
+			}
+			missedStadiums.put((short) (firstDay + i), Arrays.copyOf(mapEntry, size));
+		}
+
+		for (int g1 = index2; g1 < schedule.size() - 1 && schedule.day(g1) < lastDay; g1++) {
+			for (int g2 = g1 + 1; g2 < schedule.size() - 1 && schedule.day(g2) == schedule.day(g1); g2++) {
+				if (reachability.canReach(g1, g2)) {
+					long possibleDH = 1L << schedule.stadiumIndex(g1) | 1L << schedule.stadiumIndex(g2);
+					boolean shouldAdd = true;
+					for (TLongIterator it = possibleDHs.iterator(); it.hasNext();) {
+						long set = it.next();
+						shouldAdd = shouldAdd && (set & possibleDH) != possibleDH;
+					}
+					if (shouldAdd) {
+						possibleDHs.add(possibleDH);
+					}
+				}
+			}
+		}
+		doubleHeaderBound = new DoubleHeaderBound(possibleDHs);
+	}
+
+	/**
+	 * @return the number of double headers possible on the trip, followed by
+	 *         one line for each pair of stadiums
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("There are ").append(doubleHeaderBound.maxRemaining(0))
+				.append(" possible DHs on this trip:");
+		for (TLongIterator it = possibleDHs.iterator(); it.hasNext();) {
+			sb.append(System.lineSeparator()).append(venues.toString(it.next()));
+		}
+		return sb.toString();
+	}
+
+}
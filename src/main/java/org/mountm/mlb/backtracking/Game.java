@@ -1,39 +1,119 @@
 package org.mountm.mlb.backtracking;
 
 import org.joda.time.DateTime;
-import org.joda.time.Minutes;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDateTime;
 
 /**
  * Immutable object representing a baseball game. Implements Comparable so that
  * a List of games can be sorted.
+ *
+ * The start time is kept as a number of minutes since 1970-01-01 00:00 on the
+ * clock the schedule is written in (Eastern time), so the reachability rules
+ * are integer arithmetic and work the same across a year boundary. A DateTime
+ * is only created when a game is printed.
+ *
+ * The venue is an index into a {@link Venues} registry, the MLB stadiums
+ * unless another registry is given.
  * 
  */
 public class Game implements Comparable<Game> {
 
-	private Stadium stadium;
-	private DateTime date;
+	private final Venues venues;
+	private final int venue;
+	// minutes since 1970-01-01 00:00, and the day that minute falls on
+	private final int epochMinute;
+	private final int dayIndex;
+	// position in the master game list, or -1 if not known
+	private final int index;
 
-	private static final int TIME_OF_GAME = 240;
-	private static final int NINE_AM = 32400000;
-	private static final int TEN_PM = 79200000;
+	static final int TIME_OF_GAME = 240;
+	private static final int NINE_AM = 540;
+	private static final int TEN_PM = 1320;
 	private static final int MAX_DRIVING = 720;
+	private static final int MINUTES_PER_DAY = 1440;
 
 	public Game(Stadium home, DateTime date) {
-		this.stadium = home;
-		this.date = date;
+		this(home, date, -1);
+	}
+
+	public Game(Stadium home, DateTime date, int index) {
+		this(home, toEpochMinute(date), index);
+	}
+
+	/**
+	 * @param epochMinute
+	 *            The start time in minutes since 1970-01-01 00:00
+	 */
+	public Game(Stadium home, int epochMinute, int index) {
+		this(Venues.MLB, home.getIndex(), epochMinute, index);
+	}
+
+	/**
+	 * @param venue
+	 *            The index of the venue in the registry
+	 * @param epochMinute
+	 *            The start time in minutes since 1970-01-01 00:00
+	 */
+	public Game(Venues venues, int venue, int epochMinute, int index) {
+		this.venues = venues;
+		this.venue = venue;
+		this.epochMinute = epochMinute;
+		this.dayIndex = Math.floorDiv(epochMinute, MINUTES_PER_DAY);
+		this.index = index;
 	}
 
 	public Game() {
-		this.stadium = Stadium.ARI;
-		this.date = DateTime.now();
+		this(Stadium.ARI, DateTime.now(), -1);
 	}
 
+	/**
+	 * @return the stadium, for games at the MLB stadiums
+	 */
 	public Stadium getStadium() {
-		return stadium;
+		return Stadium.valueOf(venues.code(venue));
+	}
+
+	public Venues getVenues() {
+		return venues;
 	}
 
+	/**
+	 * @return the code of the venue, such as BAL
+	 */
+	public String venueCode() {
+		return venues.code(venue);
+	}
+
+	/**
+	 * @return the start time as a DateTime in the default time zone. A new
+	 *         object is created on every call.
+	 */
 	public DateTime getDate() {
-		return date;
+		return new LocalDateTime(60000L * epochMinute, DateTimeZone.UTC).toDateTime();
+	}
+
+	/**
+	 * @return the index of this game in the list it was read into, or -1 if
+	 *         the game was created without one
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the start time in minutes since 1970-01-01 00:00
+	 */
+	public int epochMinute() {
+		return epochMinute;
+	}
+
+	/**
+	 * @return the day this game occurs on, in days since 1970-01-01. Unlike
+	 *         dayOfYear, differences are correct across a year boundary.
+	 */
+	public int dayIndex() {
+		return dayIndex;
 	}
 
 	/**
@@ -41,15 +121,23 @@ public class Game implements Comparable<Game> {
 	 */
 	public int dayOfYear() {
 		// used as a more meaningful key in the missedStadiums map
-		return date.getDayOfYear();
+		return dayIndex - epochDay(yearOf(dayIndex), 1, 1) + 1;
 	}
 	
+	public int year() {
+		return yearOf(dayIndex);
+	}
+
 	public int getStartTime() {
-		return 1440 * date.getDayOfYear() + date.getMinuteOfDay();
+		return MINUTES_PER_DAY * dayOfYear() + minuteOfDay();
+	}
+
+	public int minuteOfDay() {
+		return epochMinute - MINUTES_PER_DAY * dayIndex;
 	}
 
 	public int stadiumIndex() {
-		return stadium.getIndex();
+		return venue;
 	}
 
 	/**
@@ -59,7 +147,16 @@ public class Game implements Comparable<Game> {
 	 * @return The strict driving time between this game and the next game.
 	 */
 	public int getMinutesTo(Game g) {
-		return stadium.getMinutesTo(g.stadium);
+		return venues.minutes(venue, g.venue);
+	}
+
+	/**
+	 * @return The driving time between this game and the next game, leaving
+	 *         when this game ends.
+	 */
+	public int getMinutesTo(Game g, DrivingTimes times) {
+		int bucket = DrivingTimes.bucket(venues.timeZone(venue), epochMinute + TIME_OF_GAME);
+		return times.minutes(bucket, venue, g.venue);
 	}
 
 	/**
@@ -72,16 +169,26 @@ public class Game implements Comparable<Game> {
 	 *         game; <code>false</code> otherwise
 	 */
 	public boolean canReach(Game g) {
-		if (date.isAfter(g.date.minusMinutes(TIME_OF_GAME))) {
+		return canReach(g, DrivingTimes.STATIC);
+	}
+
+	/**
+	 * Same as {@link #canReach(Game)}, with the driving time taken from the
+	 * specified model for leaving when this game ends.
+	 */
+	public boolean canReach(Game g, DrivingTimes times) {
+		int endOfGame = epochMinute + TIME_OF_GAME;
+		if (endOfGame > g.epochMinute) {
 			return false;
 		}
-		int dayDiff = g.date.getDayOfYear() - date.getDayOfYear();
-		int drivingTime = stadium.getMinutesTo(g.stadium);
+		int dayDiff = g.dayIndex - dayIndex;
+		int drivingTime = times.minutes(DrivingTimes.bucket(venues.timeZone(venue), endOfGame), venue,
+				g.venue);
 		if (dayDiff == 0) {
-			return Minutes.minutesBetween(date.plusMinutes(TIME_OF_GAME), g.date).getMinutes() > drivingTime;
+			return g.epochMinute - endOfGame > drivingTime;
 		}
-		int drivingAfterGame = Minutes.minutesBetween(date.plusMinutes(TIME_OF_GAME),
-				date.withMillisOfDay(TEN_PM).plusHours(stadium.getTimeZone())).getMinutes();
+		// driving stops at 10 PM local time
+		int drivingAfterGame = MINUTES_PER_DAY * dayIndex + TEN_PM + 60 * venues.timeZone(venue) - endOfGame;
 		if (drivingAfterGame > 0) {
 			drivingTime -= drivingAfterGame;
 		}
@@ -90,19 +197,49 @@ public class Game implements Comparable<Game> {
 			dayDiff--;
 		}
 		if (dayDiff == 1) {
-			return Minutes.minutesBetween(g.date.withMillisOfDay(NINE_AM).plusHours(g.stadium.getTimeZone()),
-					g.date).getMinutes() > drivingTime;
+			// and starts again at 9 AM local time
+			return g.epochMinute - (MINUTES_PER_DAY * g.dayIndex + NINE_AM + 60 * g.venues.timeZone(g.venue)) > drivingTime;
 		}
 		return true;
 	}
 
+	/**
+	 * @return the number of days from 1970-01-01 to the specified date in the
+	 *         proleptic Gregorian calendar
+	 */
+	static int epochDay(int year, int month, int day) {
+		// shift the year to start in March, so the leap day is last
+		int y = month <= 2 ? year - 1 : year;
+		int era = Math.floorDiv(y, 400);
+		int yearOfEra = y - 400 * era;
+		int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		int dayOfEra = 365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return 146097 * era + dayOfEra - 719468;
+	}
+
+	// the year that the specified epoch day falls in
+	private static int yearOf(int epochDay) {
+		int year = 1970 + Math.floorDiv(epochDay, 366);
+		while (epochDay(year + 1, 1, 1) <= epochDay) {
+			year++;
+		}
+		return year;
+	}
+
+	private static int toEpochMinute(DateTime date) {
+		// the clock time, not the instant, so daylight saving time does not
+		// shift games
+		long millis = date.toLocalDateTime().toDateTime(DateTimeZone.UTC).getMillis();
+		return (int) Math.floorDiv(millis, 60000L);
+	}
+
 	@Override
 	public String toString() {
-		return stadium + " " + date.plusMinutes(30).toString("M/dd hh:mm aa");
+		return venues.code(venue) + " " + getDate().plusMinutes(30).toString("M/dd hh:mm aa");
 	}
 	
 	public String lpString() {
-		return stadium + date.plusMinutes(30).toString("MMMddHH");
+		return venues.code(venue) + getDate().plusMinutes(30).toString("MMMddHH");
 	}
 
 	/**
@@ -113,16 +250,16 @@ public class Game implements Comparable<Game> {
 	 *         greater than 0 if this game starts after the specified game.
 	 */
 	public int compareTo(Game g) {
-		int startTimeDiff = Long.compare(date.getMillis(), g.date.getMillis());
-		return startTimeDiff == 0 ? stadium.compareTo(g.stadium) : startTimeDiff;
+		int startTimeDiff = Integer.compare(epochMinute, g.epochMinute);
+		return startTimeDiff == 0 ? Integer.compare(venue, g.venue) : startTimeDiff;
 	}
 
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + ((stadium == null) ? 0 : stadium.hashCode());
-		result = prime * result + ((date == null) ? 0 : date.hashCode());
+		result = prime * result + venue;
+		result = prime * result + epochMinute;
 		return result;
 	}
 
@@ -135,14 +272,9 @@ public class Game implements Comparable<Game> {
 		if (getClass() != obj.getClass())
 			return false;
 		Game other = (Game) obj;
-		if (stadium != other.stadium)
-			return false;
-		if (date == null) {
-			if (other.date != null)
-				return false;
-		} else if (!date.equals(other.date))
+		if (venue != other.venue || venues != other.venues)
 			return false;
-		return true;
+		return epochMinute == other.epochMinute;
 	}
 
 }
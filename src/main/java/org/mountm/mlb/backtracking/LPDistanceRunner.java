@@ -1,219 +1,158 @@
 package org.mountm.mlb.backtracking;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
 
-import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormat;
-import org.joda.time.format.DateTimeFormatter;
 
 public class LPDistanceRunner {
 	
-	private static List<Game> gameList = new ArrayList<Game>(2430);
-	private static Map<Game, Set<Game>> gamesLeavingGame = new HashMap<>();
-	private static Set<Game> lastGamePerStadium = new HashSet<>();
-	private static Set<Game> firstGamePerStadium = new HashSet<>();
-	private static List<String> magicArcs = new ArrayList<>();
-	private static List<String> regularArcs = new ArrayList<>();
-	private static Map<Stadium, List<String>> arcsLeavingStadium = new HashMap<>();
-	private static Map<Stadium, List<String>> arcsArrivingStadium = new HashMap<>();
-	private static Map<Game, List<String>> arcsLeavingGame = new HashMap<>();
-	private static Map<Game, List<String>> arcsArrivingGame = new HashMap<>();
-	
+	private static List<Game> gameList;
+	private static ReachabilityIndex reachability;
+	private static DrivingTimes times = DrivingTimes.STATIC;
+	// Consecutive games in a trip are less than this many days apart
+	private static int maxDays = 40;
+	// the schedule, and the directory the model is written to
+	private static String gamesFile = "Games.csv";
+	private static String outputDir = null;
+
+	// Arcs between games, in compressed sparse row form. The arcs leaving
+	// game i are arcTo[arcStart[i]] to arcTo[arcStart[i + 1] - 1]. The
+	// arcs arriving at game j are listed by number in arcsIn, starting at
+	// inStart[j].
+	private static int[] arcStart;
+	private static int[] arcTo;
+	private static int[] arcFrom;
+	private static int[] inStart;
+	private static int[] arcsIn;
+	// magic arcs close the loop from the last game at one stadium to the
+	// first game at another
+	private static int[] magicFrom;
+	private static int[] magicTo;
+	private static int numMagicArcs = 0;
+	// lpString is slow, so each name is only built once; arc names are
+	// built from them as they are written
+	private static String[] names;
+
 	public static void main(String[] args) {
-		BufferedReader input = null;
-		String currentLine;
-		try {
-			input = new BufferedReader(new FileReader("Games.csv"));
-			while ((currentLine = input.readLine()) != null) {
-				int delimiter = currentLine.indexOf(",");
-				DateTimeFormatter format = DateTimeFormat.forPattern("MM/dd/yyyy kk:mm");
-				DateTime test = format.parseDateTime(currentLine.substring(0, delimiter)).minusMinutes(30);
-				Stadium stadium = Stadium.valueOf(currentLine.substring(delimiter + 1));
-				gameList.add(new Game(stadium, test));
+		ModelWriter.Format modelFormat = ModelWriter.Format.LP;
+		String venuesFile = null;
+		String trafficFile = null;
+		for (String arg : args) {
+			if (arg.startsWith("--format=")) {
+				modelFormat = ModelWriter.Format.of(arg.substring("--format=".length()));
+			} else if (arg.startsWith("--max-days=")) {
+				maxDays = Integer.parseInt(arg.substring("--max-days=".length()));
+			} else if (arg.startsWith("--traffic=")) {
+				trafficFile = arg.substring("--traffic=".length());
+			} else if (arg.startsWith("--venues=")) {
+				venuesFile = arg.substring("--venues=".length());
+			} else if (arg.startsWith("--games=")) {
+				gamesFile = arg.substring("--games=".length());
+			} else if (arg.startsWith("--output-dir=")) {
+				outputDir = arg.substring("--output-dir=".length());
 			}
+		}
+		times = BacktrackingRunner.readDrivingTimes(trafficFile, BacktrackingRunner.readVenues(venuesFile));
+		try {
+			ScheduleLoader loader = ScheduleLoader.load(new File(gamesFile), times);
+			gameList = loader.games();
+			reachability = loader.reachability();
 		} catch (IOException e) {
 			e.printStackTrace();
-		} finally {
-			try {
-				if (input != null)
-					input.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+			return;
 		}
-		
-		populateMaps();
-		
+		buildArcs();
+		System.out.println(arcTo.length + " arcs between games at most " + (maxDays - 1) + " days apart, "
+				+ numMagicArcs + " magic arcs");
+
 		try {
-			String constraint, objective, declaration;
-			
-			File file = new File("MLBTSP.lp");
-			if (!file.exists()) {
-				file.createNewFile();
-			}
-			
-			FileWriter fw = new FileWriter(file.getAbsoluteFile());
-			BufferedWriter bw = new BufferedWriter(fw);
-			
-			objective = "MINIMIZE ";
-			for (Entry<Game, Set<Game>> entry : gamesLeavingGame.entrySet()) {
-				Game g1 = entry.getKey();
-				for (Game g2: entry.getValue()) {
-					objective += g1.getMinutesTo(g2) + " " + g1.lpString() + "to" + g2.lpString();
-					if (objective.length() >= 500) {
-						bw.write(objective);
-						bw.newLine();
-						objective = "";
-					}
-					objective += " + ";
+			ModelWriter model = ModelWriter.open(
+					BacktrackingRunner.outputFile(outputDir, "MLBTSP" + modelFormat.extension()), modelFormat);
+			try {
+				model.minimize();
+				for (int arc = 0; arc < arcTo.length; arc++) {
+					Game g1 = gameList.get(arcFrom[arc]);
+					model.term(g1.getMinutesTo(gameList.get(arcTo[arc]), times), arcName(arc));
 				}
-			}
-			objective = objective.substring(0, objective.length() - 3);
-			bw.write(objective);
-			bw.newLine();
-			constraint = "SUBJECT TO";
-			bw.write(constraint);
-			bw.newLine();
-			
-			// must be exactly one arc leaving each stadium
-			// (including magic arcs)
-			for (List<String> arcs : arcsLeavingStadium.values()) {
-				constraint = "";
-				for (String arc : arcs) {
-					constraint += arc;
-					if (constraint.length() >= 500) {
-						bw.write(constraint);
-						bw.newLine();
-						constraint = "";
+
+				// must be exactly one arc leaving each stadium
+				// (including magic arcs)
+				for (int s = 0; s < times.venues().size(); s++) {
+					model.constraint(null);
+					for (int i = 0; i < gameList.size(); i++) {
+						if (gameList.get(i).stadiumIndex() == s) {
+							for (int arc = arcStart[i]; arc < arcStart[i + 1]; arc++) {
+								model.term(arcName(arc));
+							}
+						}
 					}
-					constraint += " + ";
-				}
-				constraint = constraint.substring(0, constraint.length() - 3) + " = 1";
-				bw.write(constraint);
-				bw.newLine();
-			}
-			
-			// must be exactly one arc arriving at each stadium
-			// (including magic arcs)
-			for (List<String> arcs : arcsArrivingStadium.values()) {
-				constraint = "";
-				for (String arc : arcs) {
-					constraint += arc;
-					if (constraint.length() >= 500) {
-						bw.write(constraint);
-						bw.newLine();
-						constraint = "";
+					for (int m = 0; m < numMagicArcs; m++) {
+						if (gameList.get(magicFrom[m]).stadiumIndex() == s) {
+							model.term(magicArcName(m));
+						}
 					}
-					constraint += " + ";
+					model.exactly(1);
 				}
-				constraint = constraint.substring(0, constraint.length() - 3) + " = 1";
-				bw.write(constraint);
-				bw.newLine();
-			}
-			
-			// for each game, 
-			for (Game g: gameList) {
-				// sum of arcs arriving at game must be less than or equal to one
-				constraint = "";
-				for (String arc : arcsArrivingGame.get(g)) {
-					constraint += arc;
-					if (constraint.length() >= 500) {
-						bw.write(constraint);
-						bw.newLine();
-						constraint = "";
+
+				// must be exactly one arc arriving at each stadium
+				// (including magic arcs)
+				for (int s = 0; s < times.venues().size(); s++) {
+					model.constraint(null);
+					for (int j = 0; j < gameList.size(); j++) {
+						if (gameList.get(j).stadiumIndex() == s) {
+							for (int k = inStart[j]; k < inStart[j + 1]; k++) {
+								model.term(arcName(arcsIn[k]));
+							}
+						}
 					}
-					constraint += " + ";
-				}
-				constraint = constraint.substring(0, constraint.length() - 3) + " <= 1";
-				bw.write(constraint);
-				bw.newLine();
-				
-				// sum of arcs departing game must be less than or equal to one
-				constraint = "";
-				for (String arc : arcsLeavingGame.get(g)) {
-					constraint += arc;
-					if (constraint.length() >= 500) {
-						bw.write(constraint);
-						bw.newLine();
-						constraint = "";
+					for (int m = 0; m < numMagicArcs; m++) {
+						if (gameList.get(magicTo[m]).stadiumIndex() == s) {
+							model.term(magicArcName(m));
+						}
 					}
-					constraint += " + ";
+					model.exactly(1);
 				}
-				constraint = constraint.substring(0, constraint.length() - 3) + " <= 1";
-				bw.write(constraint);
-				bw.newLine();
-				
-				// sum of arriving arcs must equal sum of departing arcs
-				constraint = "";
-				for (String arc : arcsArrivingGame.get(g)) {
-					constraint += arc;
-					if (constraint.length() >= 500) {
-						bw.write(constraint);
-						bw.newLine();
-						constraint = "";
-					}
-					constraint += " + ";
+
+				// for each game,
+				for (int g = 0; g < gameList.size(); g++) {
+					// sum of arcs arriving at game must be less than or equal to one
+					model.constraint(null);
+					writeArriving(model, g, 1);
+					model.atMost(1);
+
+					// sum of arcs departing game must be less than or equal to one
+					model.constraint(null);
+					writeLeaving(model, g, 1);
+					model.atMost(1);
+
+					// sum of arriving arcs must equal sum of departing arcs
+					model.constraint(null);
+					writeArriving(model, g, 1);
+					writeLeaving(model, g, -1);
+					model.exactly(0);
 				}
-				constraint = constraint.substring(0, constraint.length() - 3) + " - ";
-				for (String arc : arcsLeavingGame.get(g)) {
-					constraint += arc;
-					if (constraint.length() >= 500) {
-						bw.write(constraint);
-						bw.newLine();
-						constraint = "";
-					}
-					constraint += " - ";
+
+				// must have exactly one magic arc "closing the loop"
+				model.constraint(null);
+				for (int m = 0; m < numMagicArcs; m++) {
+					model.term(magicArcName(m));
 				}
-				constraint = constraint.substring(0, constraint.length() - 3) + " = 0";
-				bw.write(constraint);
-				bw.newLine();
-			}
-			
-			// must have exactly one magic arc "closing the loop"
-			constraint = "";
-			for (String arc : magicArcs) {
-				constraint += arc;
-				if (constraint.length() >= 500) {
-					bw.write(constraint);
-					bw.newLine();
-					constraint = "";
+				model.exactly(0);
+
+				for (int arc = 0; arc < arcTo.length; arc++) {
+					model.binary(arcName(arc));
 				}
-				constraint += " + ";
-			}
-			constraint = constraint.substring(0, constraint.length() - 3) + " = 0";
-			bw.write(constraint);
-			bw.newLine();
-			
-			declaration = "BINARY";
-			bw.write(declaration);
-			bw.newLine();
-			
-			for (String arc : regularArcs) {
-				bw.write(arc);
-				bw.newLine();
-			}
-			for (String arc : magicArcs) {
-				bw.write(arc);
-				bw.newLine();
+				for (int m = 0; m < numMagicArcs; m++) {
+					model.binary(magicArcName(m));
+				}
+
+				model.close();
+			} catch (Throwable t) {
+				model.abort();
+				throw t;
 			}
-			
-			declaration = "END";
-			bw.write(declaration);
-			
-			
-			bw.close();
 
 			System.out.println("Done");
 		} catch (IOException e) {
@@ -221,73 +160,113 @@ public class LPDistanceRunner {
 		}
 	}
 
-	private static void populateMaps() {
-		Game[] lastGameHere = new Game[Stadium.values().length];
-		for (int i = 0; i < gameList.size(); i++) {
+	private static void writeArriving(ModelWriter model, int game, int coefficient) throws IOException {
+		for (int k = inStart[game]; k < inStart[game + 1]; k++) {
+			model.term(coefficient, arcName(arcsIn[k]));
+		}
+		for (int m = 0; m < numMagicArcs; m++) {
+			if (magicTo[m] == game) {
+				model.term(coefficient, magicArcName(m));
+			}
+		}
+	}
+
+	private static void writeLeaving(ModelWriter model, int game, int coefficient) throws IOException {
+		for (int arc = arcStart[game]; arc < arcStart[game + 1]; arc++) {
+			model.term(coefficient, arcName(arc));
+		}
+		for (int m = 0; m < numMagicArcs; m++) {
+			if (magicFrom[m] == game) {
+				model.term(coefficient, magicArcName(m));
+			}
+		}
+	}
+
+	private static String arcName(int arc) {
+		return names[arcFrom[arc]] + "to" + names[arcTo[arc]];
+	}
+
+	private static String magicArcName(int m) {
+		return names[magicFrom[m]] + "to" + names[magicTo[m]];
+	}
+
+	// Builds the arcs between reachable games at different stadiums that
+	// are less than maxDays apart, and the magic arcs.
+	private static void buildArcs() {
+		int n = gameList.size();
+		names = new String[n];
+		for (int i = 0; i < n; i++) {
+			names[i] = gameList.get(i).lpString();
+		}
+
+		// count the arcs first so that the arrays can be filled in place
+		arcStart = new int[n + 1];
+		int[] end = new int[n];
+		int last = 0;
+		for (int i = 0; i < n; i++) {
 			Game g1 = gameList.get(i);
-			if (!firstGamePerStadium.stream().map(Game::getStadium).anyMatch(s -> s.equals(g1.getStadium()))) {
-				firstGamePerStadium.add(g1);
+			last = Math.max(last, i + 1);
+			while (last < n && gameList.get(last).dayIndex() - g1.dayIndex() < maxDays) {
+				last++;
 			}
-			lastGameHere[g1.getStadium().getIndex()] = g1;
-			for (int j = i+1; j < gameList.size(); j++) {
-				Game g2 = gameList.get(j);
-				if (!g1.getStadium().equals(g2.getStadium()) && g1.canReach(g2)) {
-					String arc = g1.lpString() + "to" + g2.lpString();
-					regularArcs.add(arc);
-					
-					Set<Game> innerSet = gamesLeavingGame.getOrDefault(g1, new HashSet<>());
-					innerSet.add(g2);
-					gamesLeavingGame.put(g1, innerSet);
-					
-					List<String> innerList = arcsLeavingStadium.getOrDefault(g1.getStadium(), new ArrayList<>());
-					innerList.add(arc);
-					arcsLeavingStadium.put(g1.getStadium(), innerList);
-					
-					innerList = arcsArrivingStadium.getOrDefault(g2.getStadium(), new ArrayList<>());
-					innerList.add(arc);
-					arcsArrivingStadium.put(g2.getStadium(), innerList);
-					
-					innerList = arcsLeavingGame.getOrDefault(g1, new ArrayList<>());
-					innerList.add(arc);
-					arcsLeavingGame.put(g1, innerList);
-					
-					innerList = arcsArrivingGame.getOrDefault(g2, new ArrayList<>());
-					innerList.add(arc);
-					arcsArrivingGame.put(g2, innerList);
+			end[i] = last;
+			int count = 0;
+			for (int j = i + 1; j < last; j++) {
+				if (isArc(i, j)) {
+					count++;
 				}
 			}
+			arcStart[i + 1] = arcStart[i] + count;
 		}
-		
-		for (int i = 0; i < Stadium.values().length; i++) {
-			lastGamePerStadium.add(lastGameHere[i]);
+		arcTo = new int[arcStart[n]];
+		arcFrom = new int[arcStart[n]];
+		inStart = new int[n + 1];
+		int arc = 0;
+		for (int i = 0; i < n; i++) {
+			for (int j = i + 1; j < end[i]; j++) {
+				if (isArc(i, j)) {
+					arcFrom[arc] = i;
+					arcTo[arc++] = j;
+					inStart[j + 1]++;
+				}
+			}
 		}
-		
-		for (Game g1: lastGamePerStadium) {
-			for (Game g2: firstGamePerStadium) {
-				if (!g1.getStadium().equals(g2.getStadium())) {
-					String arc = g1.lpString() + "to" + g2.lpString();
-					magicArcs.add(arc);
-					
-					List<String> innerList = arcsLeavingStadium.getOrDefault(g1.getStadium(), new ArrayList<>());
-					innerList.add(arc);
-					arcsLeavingStadium.put(g1.getStadium(), innerList);
-					
-					innerList = arcsArrivingStadium.getOrDefault(g2.getStadium(), new ArrayList<>());
-					innerList.add(arc);
-					arcsArrivingStadium.put(g2.getStadium(), innerList);
-					
-					innerList = arcsLeavingGame.getOrDefault(g1, new ArrayList<>());
-					innerList.add(arc);
-					arcsLeavingGame.put(g1, innerList);
-					
-					innerList = arcsArrivingGame.getOrDefault(g2, new ArrayList<>());
-					innerList.add(arc);
-					arcsArrivingGame.put(g2, innerList);
+		for (int j = 0; j < n; j++) {
+			inStart[j + 1] += inStart[j];
+		}
+		// arcs are numbered in order of their first game, so each game's
+		// arriving arcs are in increasing order too
+		arcsIn = new int[arcTo.length];
+		int[] next = Arrays.copyOf(inStart, n);
+		for (arc = 0; arc < arcTo.length; arc++) {
+			arcsIn[next[arcTo[arc]]++] = arc;
+		}
+
+		int numStadiums = times.venues().size();
+		int[] firstGameHere = new int[numStadiums];
+		int[] lastGameHere = new int[numStadiums];
+		Arrays.fill(firstGameHere, -1);
+		for (int i = 0; i < n; i++) {
+			int s = gameList.get(i).stadiumIndex();
+			if (firstGameHere[s] < 0) {
+				firstGameHere[s] = i;
+			}
+			lastGameHere[s] = i;
+		}
+		magicFrom = new int[numStadiums * numStadiums];
+		magicTo = new int[numStadiums * numStadiums];
+		for (int s1 = 0; s1 < numStadiums; s1++) {
+			for (int s2 = 0; s2 < numStadiums; s2++) {
+				if (s1 != s2) {
+					magicFrom[numMagicArcs] = lastGameHere[s1];
+					magicTo[numMagicArcs++] = firstGameHere[s2];
 				}
 			}
 		}
-		
 	}
 
+	private static boolean isArc(int from, int to) {
+		return gameList.get(from).stadiumIndex() != gameList.get(to).stadiumIndex() && reachability.canReach(from, to);
+	}
 
 }
@@ -1,68 +1,104 @@
 package org.mountm.mlb.backtracking;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import org.joda.time.DateTime;
 import org.joda.time.Interval;
-import org.joda.time.format.DateTimeFormat;
-import org.joda.time.format.DateTimeFormatter;
 
 
 public class LinearProgramRunner {
 	
-	private static List<Game> gameList = new ArrayList<Game>(2430);
+	private static List<Game> gameList;
 	private static List<Game> westCoast = new ArrayList<Game>(567);
+	private static ReachabilityIndex westCoastReachability;
+	private static Venues venues = Venues.MLB;
+	private static DrivingTimes times = DrivingTimes.STATIC;
+	private static ConflictGraph conflicts;
 	private static List<Interval> dateRanges = new ArrayList<Interval>();
 
-	private static final Set<Stadium> westCoastStadiums = new HashSet<Stadium>(
-			Arrays.asList(Stadium.LAA, Stadium.OAK, Stadium.SEA, Stadium.LAD, Stadium.SDP, Stadium.SFG, Stadium.ARI));
+	// the venues in the westernmost time zone, which the slices are built
+	// around
+	private static boolean[] westCoastStadiums = venues.westCoast();
+	private static int numWestCoast;
 	private static final int TWENTY_NINE_DAYS = 41760;
+	// slices are written on a pool of this many threads
+	private static int numThreads = Runtime.getRuntime().availableProcessors();
+	// the schedule, and the directory the models are written to
+	private static String gamesFile = "Games.csv";
+	private static String outputDir = null;
 
 	public static void main(String[] args) {
-		BufferedReader input = null;
-		String currentLine;
-		try {
-			input = new BufferedReader(new FileReader("Games.csv"));
-			while ((currentLine = input.readLine()) != null) {
-				int delimiter = currentLine.indexOf(",");
-				DateTimeFormatter format = DateTimeFormat.forPattern("MM/dd/yyyy kk:mm");
-				DateTime test = format.parseDateTime(currentLine.substring(0, delimiter)).minusMinutes(30);
-				Stadium stadium = Stadium.valueOf(currentLine.substring(delimiter + 1));
-				gameList.add(new Game(stadium, test));
-				if (westCoastStadiums.contains(stadium)) {
-					westCoast.add(new Game(stadium, test));
-				}
+		ModelWriter.Format modelFormat = ModelWriter.Format.LP;
+		String venuesFile = null;
+		String trafficFile = null;
+		for (String arg : args) {
+			if (arg.startsWith("--format=")) {
+				modelFormat = ModelWriter.Format.of(arg.substring("--format=".length()));
+			} else if (arg.startsWith("--threads=")) {
+				numThreads = Integer.parseInt(arg.substring("--threads=".length()));
+			} else if (arg.startsWith("--traffic=")) {
+				trafficFile = arg.substring("--traffic=".length());
+			} else if (arg.startsWith("--venues=")) {
+				venuesFile = arg.substring("--venues=".length());
+			} else if (arg.startsWith("--games=")) {
+				gamesFile = arg.substring("--games=".length());
+			} else if (arg.startsWith("--output-dir=")) {
+				outputDir = arg.substring("--output-dir=".length());
+			}
+		}
+		venues = BacktrackingRunner.readVenues(venuesFile);
+		times = BacktrackingRunner.readDrivingTimes(trafficFile, venues);
+		westCoastStadiums = venues.westCoast();
+		for (boolean west : westCoastStadiums) {
+			if (west) {
+				numWestCoast++;
 			}
+		}
+		ScheduleLoader loader;
+		try {
+			loader = ScheduleLoader.load(new File(gamesFile), times);
 		} catch (IOException e) {
 			e.printStackTrace();
-		} finally {
-			try {
-				if (input != null)
-					input.close();
-			} catch (IOException e) {
-				e.printStackTrace();
+			return;
+		}
+		gameList = loader.games();
+		for (Game g : gameList) {
+			if (westCoastStadiums[g.stadiumIndex()]) {
+				// indexed by position in the west coast list
+				westCoast.add(new Game(venues, g.stadiumIndex(), g.epochMinute(), westCoast.size()));
 			}
 		}
 
+		westCoastReachability = new ReachabilityIndex(westCoast, times);
+		conflicts = new ConflictGraph(loader.reachability());
+		System.out.println(conflicts.numConflicts() + " conflicting pairs of games, covered by "
+				+ conflicts.numCliques() + " cliques");
+
 		Interval allStarBreak = findAllStarBreak(gameList);
 		System.out.println("ASB starts on " + allStarBreak.getStart().toString("MMM dd") + " and ends on "
 				+ allStarBreak.getEnd().toString("MMM dd"));
 
-		backtrack(new ArrayList<Game>(7));
+		backtrack(new ArrayList<Game>(numWestCoast));
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		ExecutorCompletionService<String> completion = new ExecutorCompletionService<>(executor);
 		int counter = 1;
 		for (Interval westCoastRange : dateRanges) {
 			int index = 0;
 			List<Game> gameRange = new ArrayList<Game>(735);
+			// master index of each game in gameRange
+			TIntList rangeIndices = new TIntArrayList(735);
 			boolean isAfterASB = westCoastRange.getStart().isAfter(allStarBreak.getStart());
 			while ((gameList.get(index).dayOfYear() + 26) < westCoastRange.getStart().getDayOfYear()) {
 				index++;
@@ -75,328 +111,292 @@ public class LinearProgramRunner {
 			while (index < gameList.size()
 					&& westCoastRange.getEnd().getDayOfYear() + 26 >= gameList.get(index).dayOfYear()) {
 				if ((isAfterASB || gameList.get(index).getDate().isBefore(allStarBreak.getStart()))
-						&& (!westCoastStadiums.contains(gameList.get(index).getStadium())
+						&& (!westCoastStadiums[gameList.get(index).stadiumIndex()]
 								|| westCoastRange.contains(gameList.get(index).getDate()))) {
 					gameRange.add(gameList.get(index));
+					rangeIndices.add(index);
 				}
 				index++;
 			}
 
+			File file = BacktrackingRunner.outputFile(outputDir, "MLBTSP" + (counter++) + modelFormat.extension());
+			ModelWriter.Format sliceFormat = modelFormat;
+			completion.submit(() -> writeModel(file, gameRange, rangeIndices, sliceFormat));
+		}
+		executor.shutdown();
+
+		// report each slice as it finishes
+		for (int done = 1; done < counter; done++) {
 			try {
+				System.out.println(completion.take().get() + " (" + done + " of " + (counter - 1) + ")");
+			} catch (ExecutionException e) {
+				e.getCause().printStackTrace();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		System.out.println("Done");
+	}
 
-				String objective, constraint, declaration;
+	// Writes the model for one slice of the schedule. Slices only share
+	// read-only data, so several can be written at the same time.
+	private static String writeModel(File file, List<Game> gameRange, TIntList rangeIndices,
+			ModelWriter.Format modelFormat) throws IOException {
+		long start = System.currentTimeMillis();
+		int cliques = 0;
+		int firstStartTime = gameRange.get(0).getStartTime();
+		int lastEndTime = gameRange.get(gameRange.size() - 1).getStartTime() + 240;
+
+		// lpString is slow, so each name is only built once
+		String[] names = new String[gameRange.size()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = gameRange.get(i).lpString();
+		}
 
-				int firstStartTime = gameRange.get(0).getStartTime();
-				int lastEndTime = gameRange.get(gameRange.size() - 1).getStartTime() + 240;
+		ModelWriter model = ModelWriter.open(file, modelFormat);
+		try {
+			model.minimize();
+			model.term("endTime");
+			model.term(-1, "startTime");
+			model.term("timeToStart");
+			model.term("timeFromEnd");
+
+			// startTime must be before any game in the solution:
+			// startTime - g.getStartTime() + M*isVisited(g) <= M
+			for (int i = 0; i < names.length; i++) {
+				model.constraint("startTime" + names[i]);
+				model.term("startTime");
+				model.term(500000, names[i]);
+				model.atMost(500000 + gameRange.get(i).getStartTime());
+			}
 
-				File file = new File("MLBTSP" + (counter++) + ".lp");
+			// endTime must be after any game in the solution:
+			// games[i][j].getStartTime() - endTime +
+			// M*isVisited(games[i][j]) <= M + gameLength
+			for (int i = 0; i < names.length; i++) {
+				model.constraint("endTime" + names[i]);
+				model.term(500000, names[i]);
+				model.term(-1, "endTime");
+				model.atMost(500240 - gameRange.get(i).getStartTime());
+			}
 
-				// if file doesnt exists, then create it
-				if (!file.exists()) {
-					file.createNewFile();
+			// each ballpark must be visited once
+			// for each park, sum of all decision variables = 1
+			for (int s = 0; s < venues.size(); s++) {
+				model.constraint("didVisit" + venues.code(s));
+				for (int i = 0; i < names.length; i++) {
+					if (gameRange.get(i).stadiumIndex() == s) {
+						model.term(names[i]);
+					}
 				}
+				model.exactly(1);
+			}
 
-				FileWriter fw = new FileWriter(file.getAbsoluteFile());
-				BufferedWriter bw = new BufferedWriter(fw);
-
-				objective = "MINIMIZE endTime - startTime + timeToStart + timeFromEnd";
-				bw.write(objective);
-				bw.newLine();
-				constraint = "SUBJECT TO";
-				bw.write(constraint);
-				bw.newLine();
-
-				// startTime must be before any game in the solution:
-				// startTime - g.getStartTime() + M*isVisited(g) <= M
-				for (Game g : gameRange) {
-					constraint = "startTime" + g.lpString() + ": startTime + 500000 " + g.lpString() + " <= " + (500000 + g.getStartTime());
-					bw.write(constraint);
-					bw.newLine();
-				}
-				bw.newLine();
-
-				// endTime must be after any game in the solution:
-				// games[i][j].getStartTime() - endTime +
-				// M*isVisited(games[i][j]) <= M + gameLength
-				for (Game g : gameRange) {
-					constraint = "endTime" + g.lpString() + ": 500000 " + g.lpString() + " - endTime <= " + (500240 - g.getStartTime());
-					bw.write(constraint);
-					bw.newLine();
+			// if you can't get from one game to another, they can't both be in
+			// the solution. The season's cliques of conflicting games are
+			// restricted to the games in this slice, and each distinct one with
+			// at least two games left that is not inside another becomes a row.
+			// sum(isVisited(g) for g in clique) <= 1
+			int[] position = new int[gameList.size()];
+			Arrays.fill(position, -1);
+			for (int i = 0; i < rangeIndices.size(); i++) {
+				position[rangeIndices.get(i)] = i;
+			}
+			for (int[] members : cliqueRows(position, names.length)) {
+				model.constraint(null);
+				for (int i : members) {
+					model.term(names[i]);
 				}
-				bw.newLine();
-
-				// each ballpark must be visited once
-				// for each park, sum of all decision variables = 1
-				for (Stadium s : Stadium.values()) {
-					constraint = "didVisit" + s + ": ";
-					for (Game g : gameRange) {
-						if (g.getStadium() == s) {
-							constraint += g.lpString();
-							if (constraint.length() >= 500) {
-								bw.write(constraint);
-								bw.newLine();
-								constraint = "";
+				model.atMost(1);
+				cliques++;
+			}
+
+			// First stadium visited must be the earliest game in the
+			// solution.
+			// for each pair of stadiums,
+			// sum(isVisited(s1,n)*startTime(s1,n))
+			// + M*isFirst(s1) - sum(isVisited(s2,n)*startTime(s2, n))
+			// <= M
+			for (int s1 = 0; s1 < venues.size(); s1++) {
+				for (int s2 = 0; s2 < venues.size(); s2++) {
+					if (s1 != s2) {
+						model.constraint("isFirst" + venues.code(s1) + venues.code(s2));
+						for (int i = 0; i < names.length; i++) {
+							if (gameRange.get(i).stadiumIndex() == s1) {
+								model.term(gameRange.get(i).getStartTime(), names[i]);
 							}
-							constraint += " + ";
-						}
-					}
-					constraint = constraint.substring(0, constraint.length() - 3);
-					constraint += " = 1";
-					bw.write(constraint);
-					bw.newLine();
-				}
-				bw.newLine();
-
-				// if you can't get from one game to another, they can't
-				// both be
-				// in
-				// the solution. This is a big section.
-				// isVisited(g1) + isVisited(g2) <= 1
-				for (Game g1 : gameRange) {
-					for (Game g2 : gameRange.subList(gameRange.indexOf(g1) + 1, gameRange.size())) {
-						if (!g1.canReach(g2)) {
-							constraint = g1.lpString() + " + " + g2.lpString() + " <= 1";
-							bw.write(constraint);
-							bw.newLine();
 						}
-					}
-				}
-				bw.newLine();
-
-				// First stadium visited must be the earliest game in the
-				// solution.
-				// for each pair of stadiums,
-				// sum(isVisited(s1,n)*startTime(s1,n))
-				// + M*isFirst(s1) - sum(isVisited(s2,n)*startTime(s2, n))
-				// <= M
-				for (Stadium s1 : Stadium.values()) {
-					for (Stadium s2 : Stadium.values()) {
-						if (s1 != s2) {
-							constraint = "isFirst" + s1 + s2 + ": ";
-							for (Game g : gameRange) {
-								if (g.getStadium() == s1) {
-									constraint += g.getStartTime() + " " + g.lpString();
-									if (constraint.length() >= 500) {
-										bw.write(constraint);
-										bw.newLine();
-										constraint = "";
-									}
-									constraint += " + ";
-								}
-							}
-							constraint = constraint.substring(0, constraint.length() - 3);
-							if (constraint.length() >= 500) {
-								bw.write(constraint);
-								bw.newLine();
-								constraint = "";
-							}
-							constraint += " + 500000 isFirst" + s1 + " - ";
-							for (Game g : gameRange) {
-								if (g.getStadium() == s2) {
-									constraint += g.getStartTime() + " " + g.lpString();
-									if (constraint.length() >= 500) {
-										bw.write(constraint);
-										bw.newLine();
-										constraint = "";
-									}
-									constraint += " - ";
-								}
+						model.term(500000, "isFirst" + venues.code(s1));
+						for (int i = 0; i < names.length; i++) {
+							if (gameRange.get(i).stadiumIndex() == s2) {
+								model.term(-gameRange.get(i).getStartTime(), names[i]);
 							}
-							constraint = constraint.substring(0, constraint.length() - 3);
-							if (constraint.length() >= 500) {
-								bw.write(constraint);
-								bw.newLine();
-								constraint = "";
-							}
-							constraint += " <= 500000";
-							bw.write(constraint);
-							bw.newLine();
 						}
+						model.atMost(500000);
 					}
 				}
-				bw.newLine();
-
-				// Last stadium visited must be the latest game in the
-				// solution
-				// for each pair of stadiums, M*isLast(s1) -
-				// sum(isVisited(s1,
-				// n)*startTime(s1, n)) + sum(isVisited(s2, n)*startTime(s2,
-				// n))
-				// <=
-				// M
-				for (Stadium s1 : Stadium.values()) {
-					for (Stadium s2 : Stadium.values()) {
-						if (s1 != s2) {
-							constraint = "isLast" + s1 + s2 + ": 500000 isLast" + s1 + " - ";
-							for (Game g : gameRange) {
-								if (g.getStadium() == s1) {
-									constraint += g.getStartTime() + " " + g.lpString();
-									if (constraint.length() >= 500) {
-										bw.write(constraint);
-										bw.newLine();
-										constraint = "";
-									}
-									constraint += " - ";
-								}
-							}
-							constraint = constraint.substring(0, constraint.length() - 3);
-							if (constraint.length() >= 500) {
-								bw.write(constraint);
-								bw.newLine();
-								constraint = "";
-							}
-							constraint += " + ";
-							for (Game g : gameRange) {
-								if (g.getStadium() == s2) {
-									constraint += g.getStartTime() + " " + g.lpString();
-									if (constraint.length() >= 500) {
-										bw.write(constraint);
-										bw.newLine();
-										constraint = "";
-									}
-									constraint += " + ";
-								}
+			}
+
+			// Last stadium visited must be the latest game in the
+			// solution
+			// for each pair of stadiums, M*isLast(s1) -
+			// sum(isVisited(s1,
+			// n)*startTime(s1, n)) + sum(isVisited(s2, n)*startTime(s2,
+			// n))
+			// <=
+			// M
+			for (int s1 = 0; s1 < venues.size(); s1++) {
+				for (int s2 = 0; s2 < venues.size(); s2++) {
+					if (s1 != s2) {
+						model.constraint("isLast" + venues.code(s1) + venues.code(s2));
+						model.term(500000, "isLast" + venues.code(s1));
+						for (int i = 0; i < names.length; i++) {
+							if (gameRange.get(i).stadiumIndex() == s1) {
+								model.term(-gameRange.get(i).getStartTime(), names[i]);
 							}
-							constraint = constraint.substring(0, constraint.length() - 3);
-							if (constraint.length() >= 500) {
-								bw.write(constraint);
-								bw.newLine();
-								constraint = "";
+						}
+						for (int i = 0; i < names.length; i++) {
+							if (gameRange.get(i).stadiumIndex() == s2) {
+								model.term(gameRange.get(i).getStartTime(), names[i]);
 							}
-							constraint += " <= 500000";
-							bw.write(constraint);
-							bw.newLine();
 						}
+						model.atMost(500000);
 					}
 				}
-				bw.newLine();
-
-				// Only one park can be the first visited
-				// sum(isFirst(n)) = 1
-				constraint = "oneFirst: ";
-				for (Stadium s : Stadium.values()) {
-					constraint += "isFirst" + s;
-					if (s.getIndex() < 29) {
-						constraint += " + ";
-					} else {
-						constraint += " = 1";
-					}
-				}
-				bw.write(constraint);
-				bw.newLine();
-
-				// Only one park can be the last visited
-				// sum(isLast(n)) = 1
-				constraint = "oneLast: ";
-				for (Stadium s : Stadium.values()) {
-					constraint += "isLast" + s;
-					if (s.getIndex() < 29) {
-						constraint += " + ";
-					} else {
-						constraint += " = 1";
-					}
-				}
-				bw.write(constraint);
-				bw.newLine();
-
-				// timeToStart is the time from BAL to the first stadium
-				// sum(isFirst(n)*BAL.minutesTo(n)) - timeToStart <= 0
-				constraint = "timeToStart: ";
-				for (Stadium s : Stadium.values()) {
-					int travelTime = Stadium.BAL.getMinutesTo(s);
-					if (travelTime > 300) {
-						travelTime += Math.max(480, travelTime * 2 / 3);
-					}
-					constraint += travelTime + " isFirst" + s;
-					if (s.getIndex() < 29) {
-						constraint += " + ";
-					} else {
-						constraint += " - timeToStart <= 0";
-						bw.write(constraint);
-						bw.newLine();
-					}
-				}
-				bw.newLine();
-
-				// timeFromEnd is the time from the last stadium to BAL
-				// sum(isLast(n)*n.minutesTo(BAL)) - timeFromEnd <= 0
-				constraint = "timeFromEnd: ";
-				for (Stadium s : Stadium.values()) {
-					int travelTime = s.getMinutesTo(Stadium.BAL);
-					if (travelTime > 130) {
-						travelTime += Math.max(480, travelTime * 2 / 3);
-					}
-					constraint += travelTime + " isLast" + s;
-					if (s.getIndex() < 29) {
-						constraint += " + ";
-					} else {
-						constraint += " - timeFromEnd <= 0";
-						bw.write(constraint);
-						bw.newLine();
-					}
-				}
-				bw.newLine();
-
-				declaration = "BOUNDS";
-				bw.write(declaration);
-				bw.newLine();
-
-				declaration = firstStartTime + "<= startTime <= " + (lastEndTime - TWENTY_NINE_DAYS);
-				bw.write(declaration);
-				bw.newLine();
-				declaration = (firstStartTime + TWENTY_NINE_DAYS) + "<= endTime <= " + lastEndTime;
-				bw.write(declaration);
-				bw.newLine();
-				declaration = "0 <= timeToStart <= 2880";
-				bw.write(declaration);
-				bw.newLine();
-				declaration = "0 <= timeFromEnd <= 2880";
-				bw.write(declaration);
-				bw.newLine();
-
-				declaration = "GENERAL";
-				bw.write(declaration);
-				bw.newLine();
-				declaration = "endTime";
-				bw.write(declaration);
-				bw.newLine();
-				declaration = "startTime";
-				bw.write(declaration);
-				bw.newLine();
-				declaration = "timeToStart";
-				bw.write(declaration);
-				bw.newLine();
-				declaration = "timeFromEnd";
-				bw.write(declaration);
-				bw.newLine();
-
-				declaration = "BINARY";
-				bw.write(declaration);
-				bw.newLine();
-				for (Stadium s : Stadium.values()) {
-					declaration = "isFirst" + s;
-					bw.write(declaration);
-					bw.newLine();
-					declaration = "isLast" + s;
-					bw.write(declaration);
-					bw.newLine();
+			}
+
+			// Only one park can be the first visited
+			// sum(isFirst(n)) = 1
+			model.constraint("oneFirst");
+			for (int s = 0; s < venues.size(); s++) {
+				model.term("isFirst" + venues.code(s));
+			}
+			model.exactly(1);
+
+			// Only one park can be the last visited
+			// sum(isLast(n)) = 1
+			model.constraint("oneLast");
+			for (int s = 0; s < venues.size(); s++) {
+				model.term("isLast" + venues.code(s));
+			}
+			model.exactly(1);
+
+			// timeToStart is the time from home (BAL) to the first stadium
+			// sum(isFirst(n)*home.minutesTo(n)) - timeToStart <= 0
+			model.constraint("timeToStart");
+			for (int s = 0; s < venues.size(); s++) {
+				int travelTime = times.fastest(venues.home(), s);
+				if (travelTime > 300) {
+					travelTime += Math.max(480, travelTime * 2 / 3);
 				}
-				for (Game g : gameRange) {
-					bw.write(g.lpString());
-					bw.newLine();
+				model.term(travelTime, "isFirst" + venues.code(s));
+			}
+			model.term(-1, "timeToStart");
+			model.atMost(0);
+
+			// timeFromEnd is the time from the last stadium to home
+			// sum(isLast(n)*n.minutesTo(home)) - timeFromEnd <= 0
+			model.constraint("timeFromEnd");
+			for (int s = 0; s < venues.size(); s++) {
+				int travelTime = times.fastest(s, venues.home());
+				if (travelTime > 130) {
+					travelTime += Math.max(480, travelTime * 2 / 3);
 				}
-				bw.write("END");
-				bw.newLine();
+				model.term(travelTime, "isLast" + venues.code(s));
+			}
+			model.term(-1, "timeFromEnd");
+			model.atMost(0);
+
+			model.bounds(firstStartTime, "startTime", lastEndTime - TWENTY_NINE_DAYS);
+			model.bounds(firstStartTime + TWENTY_NINE_DAYS, "endTime", lastEndTime);
+			model.bounds(0, "timeToStart", 2880);
+			model.bounds(0, "timeFromEnd", 2880);
+
+			model.integer("endTime");
+			model.integer("startTime");
+			model.integer("timeToStart");
+			model.integer("timeFromEnd");
+
+			for (int s = 0; s < venues.size(); s++) {
+				model.binary("isFirst" + venues.code(s));
+				model.binary("isLast" + venues.code(s));
+			}
+			for (String name : names) {
+				model.binary(name);
+			}
 
-				bw.close();
+			model.close();
+		} catch (Throwable t) {
+			model.abort();
+			throw t;
+		}
 
-				System.out.println("Done");
+		return file + ": " + gameRange.size() + " games, " + cliques + " conflict rows, "
+				+ (System.currentTimeMillis() - start) + " ms";
+	}
 
-			} catch (IOException e) {
-				e.printStackTrace();
+	// The season's cliques restricted to the games of a slice, as sorted
+	// positions in the slice. Cliques that only differ in games outside the
+	// slice give the same row, and a row inside a larger one adds nothing, so
+	// only the distinct rows that no other row covers are returned.
+	private static List<int[]> cliqueRows(int[] position, int numGames) {
+		Set<TIntArrayList> seen = new HashSet<>();
+		List<int[]> rows = new ArrayList<>();
+		for (int c = 0; c < conflicts.numCliques(); c++) {
+			TIntArrayList members = new TIntArrayList(conflicts.cliqueSize(c));
+			for (int k = 0; k < conflicts.cliqueSize(c); k++) {
+				int i = position[conflicts.cliqueMember(c, k)];
+				if (i >= 0) {
+					members.add(i);
+				}
+			}
+			members.sort();
+			if (members.size() > 1 && seen.add(members)) {
+				rows.add(members.toArray());
 			}
 		}
 
+		// the rows each game is in
+		TIntArrayList[] rowsWith = new TIntArrayList[numGames];
+		for (int r = 0; r < rows.size(); r++) {
+			for (int i : rows.get(r)) {
+				if (rowsWith[i] == null) {
+					rowsWith[i] = new TIntArrayList();
+				}
+				rowsWith[i].add(r);
+			}
+		}
+		// the rows are distinct, so a row that covers another is longer, and
+		// contains its first game
+		boolean[] inRow = new boolean[numGames];
+		List<int[]> maximal = new ArrayList<>(rows.size());
+		for (int[] row : rows) {
+			for (int i : row) {
+				inRow[i] = true;
+			}
+			boolean covered = false;
+			TIntArrayList candidates = rowsWith[row[0]];
+			for (int k = 0; k < candidates.size() && !covered; k++) {
+				int[] other = rows.get(candidates.getQuick(k));
+				if (other.length > row.length) {
+					int shared = 0;
+					for (int i : other) {
+						if (inRow[i]) {
+							shared++;
+						}
+					}
+					covered = shared == row.length;
+				}
+			}
+			for (int i : row) {
+				inRow[i] = false;
+			}
+			if (!covered) {
+				maximal.add(row);
+			}
+		}
+		return maximal;
 	}
 
 	private static Interval findAllStarBreak(List<Game> games) {
@@ -429,11 +429,14 @@ public class LinearProgramRunner {
 		if (partial.size() == 0) {
 			return null;
 		}
-		int index = westCoast.indexOf(partial.remove(partial.size() - 1)) + 1;
-		return extendSolution(partial, index);
+		int index = partial.remove(partial.size() - 1).getIndex() + 1;
+		if (partial.isEmpty()) {
+			return extendSolution(partial, -1, index);
+		}
+		return extendSolution(partial, partial.get(partial.size() - 1).getIndex(), index);
 	}
 
-	private static List<Game> extendSolution(List<Game> partial, int index) {
+	private static List<Game> extendSolution(List<Game> partial, int lastIndex, int index) {
 		if (index >= westCoast.size()) {
 			return null;
 		}
@@ -443,8 +446,8 @@ public class LinearProgramRunner {
 		}
 		while (index < westCoast.size() && partial.get(partial.size() - 1).getDate().getDayOfYear() + 2 >= westCoast
 				.get(index).getDate().getDayOfYear()) {
-			if (!haveVisitedStadium(partial, westCoast.get(index).getStadium())
-					&& partial.get(partial.size() - 1).canReach(westCoast.get(index))) {
+			if (!haveVisitedStadium(partial, westCoast.get(index).stadiumIndex())
+					&& westCoastReachability.canReach(lastIndex, index)) {
 				partial.add(westCoast.get(index));
 				return partial;
 			}
@@ -453,9 +456,9 @@ public class LinearProgramRunner {
 		return null;
 	}
 
-	private static boolean haveVisitedStadium(List<Game> partial, Stadium stadium) {
+	private static boolean haveVisitedStadium(List<Game> partial, int stadium) {
 		for (Game g : partial) {
-			if (g.getStadium() == stadium) {
+			if (g.stadiumIndex() == stadium) {
 				return true;
 			}
 		}
@@ -464,15 +467,16 @@ public class LinearProgramRunner {
 
 	private static List<Game> firstExtension(List<Game> partial) {
 		if (partial.size() > 0) {
-			return extendSolution(partial, westCoast.indexOf(partial.get(partial.size() - 1)) + 1);
+			int lastIndex = partial.get(partial.size() - 1).getIndex();
+			return extendSolution(partial, lastIndex, lastIndex + 1);
 		}
-		return extendSolution(partial, 0);
+		return extendSolution(partial, -1, 0);
 	}
 
 	private static List<Game> processSolution(List<Game> partial) {
 		dateRanges.add(new Interval(partial.get(0).getDate().withTimeAtStartOfDay(),
 				partial.get(partial.size() - 1).getDate().plusDays(1).withTimeAtStartOfDay()));
-		int index = westCoast.indexOf(partial.get(0)) + 1;
+		int index = partial.get(0).getIndex() + 1;
 		while (index < westCoast.size()
 				&& westCoast.get(index).getDate().getDayOfYear() == partial.get(0).getDate().getDayOfYear()) {
 			index++;
@@ -486,7 +490,7 @@ public class LinearProgramRunner {
 	private static boolean validSolution(List<Game> partial) {
 		// all stadium-related error checking is done prior to this point - we
 		// only need to check the size of the solution.
-		return partial.size() == 7;
+		return partial.size() == numWestCoast;
 	}
 
 	private static boolean badSolution(List<Game> partial) {
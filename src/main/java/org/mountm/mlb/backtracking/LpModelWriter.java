@@ -0,0 +1,121 @@
+package org.mountm.mlb.backtracking;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes a model in CPLEX LP format. Long rows are wrapped onto new lines
+ * that start with the separator of the next term.
+ *
+ */
+class LpModelWriter extends ModelWriter {
+
+	private static final int LINE_LENGTH = 500;
+
+	private static final int OBJECTIVE = 1;
+	private static final int CONSTRAINTS = 2;
+	private static final int BOUNDS = 3;
+	private static final int GENERAL = 4;
+	private static final int BINARY = 5;
+	private static final String[] SECTION_HEADERS = { null, null, "SUBJECT TO", "BOUNDS", "GENERAL", "BINARY" };
+
+	private int section = 0;
+	// written in front of the first term of the current row
+	private String rowPrefix;
+	private int termsInRow = 0;
+
+	LpModelWriter(File file) throws IOException {
+		super(file);
+	}
+
+	@Override
+	public void minimize() throws IOException {
+		startSection(OBJECTIVE);
+		rowPrefix = "MINIMIZE ";
+		termsInRow = 0;
+	}
+
+	@Override
+	public void constraint(String name) throws IOException {
+		startSection(CONSTRAINTS);
+		rowPrefix = name == null ? "" : name + ": ";
+		termsInRow = 0;
+	}
+
+	@Override
+	public void term(long coefficient, String variable) throws IOException {
+		if (termsInRow++ == 0) {
+			write(rowPrefix);
+			if (coefficient < 0) {
+				write("- ");
+			}
+		} else {
+			if (column() >= LINE_LENGTH) {
+				newLine();
+			}
+			write(coefficient < 0 ? " - " : " + ");
+		}
+		if (coefficient != 1 && coefficient != -1) {
+			write(Math.abs(coefficient));
+			write(" ");
+		}
+		write(variable);
+	}
+
+	@Override
+	protected void endConstraint(char sense, long rhs) throws IOException {
+		if (termsInRow > 0) {
+			write(sense == 'L' ? " <= " : sense == 'E' ? " = " : " >= ");
+			write(rhs);
+			newLine();
+		}
+		termsInRow = 0;
+	}
+
+	@Override
+	public void bounds(long lower, String variable, long upper) throws IOException {
+		startSection(BOUNDS);
+		write(lower);
+		write(" <= ");
+		write(variable);
+		write(" <= ");
+		write(upper);
+		newLine();
+	}
+
+	@Override
+	public void integer(String variable) throws IOException {
+		startSection(GENERAL);
+		write(variable);
+		newLine();
+	}
+
+	@Override
+	public void binary(String variable) throws IOException {
+		startSection(BINARY);
+		write(variable);
+		newLine();
+	}
+
+	@Override
+	public void close() throws IOException {
+		startSection(BINARY + 1);
+		write("END");
+		newLine();
+		super.close();
+	}
+
+	private void startSection(int next) throws IOException {
+		if (section == OBJECTIVE && termsInRow > 0) {
+			newLine();
+		}
+		if (next != section) {
+			if (next < SECTION_HEADERS.length && SECTION_HEADERS[next] != null) {
+				write(SECTION_HEADERS[next]);
+				newLine();
+			}
+			section = next;
+		}
+	}
+
+}
@@ -0,0 +1,428 @@
+package org.mountm.mlb.backtracking;
+
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.procedure.TShortLongProcedure;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Stores sets of stadium masks keyed by game index, and answers whether any
+ * stored mask under a key is a superset of a given mask.
+ *
+ * Each key has a binary trie that branches on one stadium per level. The
+ * superset query only follows the "visited" branch for stadiums in the mask,
+ * and stops as soon as no stadiums in the mask are left to match. Small
+ * subtrees are kept as a bucket of masks that is scanned directly, which
+ * keeps the memory use per mask close to that of a plain hash set. Masks of
+ * up to 32 stadiums take one int in a bucket; larger circuits take two, and
+ * their buckets hold half as many masks.
+ *
+ * Only masks that are not covered by another mask are kept: adding a mask
+ * that already has a superset does nothing, and adding a new mask removes
+ * every stored subset of it.
+ *
+ * The nodes are fixed-size records in segments of int buffers. By default
+ * the segments are on the heap and the trie grows without limit. A trie can
+ * also be created with a fixed capacity outside the heap, either in direct
+ * buffers or in a memory-mapped scratch file, so that it adds nothing to
+ * garbage collection and can be larger than physical memory. A trie with a
+ * fixed capacity stops adding masks when it is full; queries still work.
+ *
+ * Not thread safe.
+ *
+ */
+public class MaskTrie implements Closeable {
+
+	private static final int BUCKET_SIZE = 32;
+	private static final int NUM_KEYS = 1 << 16;
+
+	// Fields of a node. A node is either a bucket of masks or has a child for
+	// each value of the stadium at its depth.
+	private static final int NOT_VISITED = 0;
+	private static final int VISITED = 1;
+	// number of masks below the node
+	private static final int COUNT = 2;
+	// number of masks in the bucket, or -1 if the node has children
+	private static final int LENGTH = 3;
+	private static final int MASKS = 4;
+	// a bucket holds one mask more than BUCKET_SIZE until it is split
+	private static final int NODE_SIZE = MASKS + BUCKET_SIZE + 1;
+	private static final int SEGMENT_NODES = (1 << 20) / NODE_SIZE;
+	private static final int SEGMENT_BYTES = SEGMENT_NODES * NODE_SIZE * 4;
+
+	// the number of stadiums, which is the depth of the trie
+	private final int numStadiums;
+	// masks take two ints, high word first
+	private final boolean wide;
+	private final int bucketSize;
+	// the most nodes one add can allocate: a root, then a split into two
+	// buckets at every depth
+	private final int nodesPerAdd;
+
+	private final int[] roots = new int[NUM_KEYS];
+	private final long maxNodes;
+	private final boolean direct;
+	// the scratch file, or null if the segments are not mapped
+	private final FileChannel channel;
+	private IntBuffer[] segments = new IntBuffer[16];
+	// Node 0 is never used. Free nodes are linked through their first field.
+	private int nodeCount = 1;
+	private int freeList = 0;
+	private int numFree = 0;
+	private int size = 0;
+
+	/**
+	 * Creates a trie for the MLB stadiums on the heap that grows as needed.
+	 */
+	public MaskTrie() {
+		this(Venues.MLB.size());
+	}
+
+	/**
+	 * Creates a trie on the heap that grows as needed.
+	 */
+	public MaskTrie(int numStadiums) {
+		this(numStadiums, Integer.MAX_VALUE, false, null);
+	}
+
+	private MaskTrie(int numStadiums, long maxNodes, boolean direct, FileChannel channel) {
+		this.numStadiums = numStadiums;
+		wide = numStadiums > Integer.SIZE;
+		bucketSize = wide ? (BUCKET_SIZE + 1) / 2 - 1 : BUCKET_SIZE;
+		nodesPerAdd = 2 * numStadiums + 1;
+		this.maxNodes = Math.min(maxNodes, Integer.MAX_VALUE);
+		this.direct = direct;
+		this.channel = channel;
+	}
+
+	/**
+	 * @return a trie that uses at most the specified number of bytes of
+	 *         direct (off-heap) memory
+	 */
+	public static MaskTrie offHeap(int numStadiums, long capacity) {
+		return new MaskTrie(numStadiums, capacity / (NODE_SIZE * 4), true, null);
+	}
+
+	/**
+	 * @return a trie that keeps its nodes in the specified file, which grows
+	 *         to at most the specified number of bytes. The operating system
+	 *         decides which parts are in memory. The file is deleted when the
+	 *         trie is closed.
+	 */
+	public static MaskTrie mapped(File file, int numStadiums, long capacity) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DELETE_ON_CLOSE);
+		return new MaskTrie(numStadiums, capacity / (NODE_SIZE * 4), true, channel);
+	}
+
+	/**
+	 * @return <code>true</code> if a mask stored under the key contains every
+	 *         stadium in the specified mask.
+	 */
+	public boolean containsSuperset(short key, long mask) {
+		int root = roots[key & 0xFFFF];
+		return root != 0 && containsSuperset(root, 0, mask);
+	}
+
+	private boolean containsSuperset(int node, int depth, long mask) {
+		IntBuffer segment = segments[node / SEGMENT_NODES];
+		int base = (node % SEGMENT_NODES) * NODE_SIZE;
+		if (segment.get(base + COUNT) == 0) {
+			return false;
+		}
+		if ((mask >>> depth) == 0) {
+			return true;
+		}
+		int length = segment.get(base + LENGTH);
+		if (length >= 0) {
+			if (wide) {
+				for (int i = base + MASKS + 2 * (length - 1); i >= base + MASKS; i -= 2) {
+					long stored = (long) segment.get(i) << 32 | (segment.get(i + 1) & 0xFFFFFFFFL);
+					if ((stored & mask) == mask) {
+						return true;
+					}
+				}
+				return false;
+			}
+			int narrow = (int) mask;
+			for (int i = base + MASKS + length - 1; i >= base + MASKS; i--) {
+				// A & B == B iff all 1 bits in B are also 1 bits in A
+				if ((segment.get(i) & narrow) == narrow) {
+					return true;
+				}
+			}
+			return false;
+		}
+		if (containsSuperset(segment.get(base + VISITED), depth + 1, mask)) {
+			return true;
+		}
+		return (mask & (1L << depth)) == 0 && containsSuperset(segment.get(base + NOT_VISITED), depth + 1, mask);
+	}
+
+	/**
+	 * Adds a mask under the specified key, unless a superset of it is already
+	 * stored or the trie is full. Any stored subsets of the mask are removed.
+	 *
+	 * @return <code>true</code> if the mask was added
+	 */
+	public boolean add(short key, long mask) {
+		int root = roots[key & 0xFFFF];
+		if (root != 0 && containsSuperset(root, 0, mask)) {
+			return false;
+		}
+		if (isFull()) {
+			return false;
+		}
+		if (root == 0) {
+			root = newBucket();
+			roots[key & 0xFFFF] = root;
+		} else {
+			size -= removeSubsets(root, 0, mask);
+		}
+		int node = root;
+		int depth = 0;
+		while (get(node, LENGTH) < 0) {
+			set(node, COUNT, get(node, COUNT) + 1);
+			node = get(node, (int) (mask >>> depth) & 1);
+			depth++;
+		}
+		addToBucket(node, mask);
+		if (get(node, LENGTH) > bucketSize) {
+			split(node, depth);
+		}
+		size++;
+		return true;
+	}
+
+	/**
+	 * @return <code>true</code> if there may not be room to add another mask
+	 */
+	public boolean isFull() {
+		return numFree + (maxNodes - nodeCount) < nodesPerAdd;
+	}
+
+	// Removes every mask below the node that is a subset of the specified
+	// mask, and returns how many were removed.
+	private int removeSubsets(int node, int depth, long mask) {
+		int count = get(node, COUNT);
+		if (count == 0) {
+			return 0;
+		}
+		int removed = 0;
+		int length = get(node, LENGTH);
+		if (length >= 0) {
+			for (int i = length - 1; i >= 0; i--) {
+				long stored = getMask(node, i);
+				if ((stored & mask) == stored) {
+					setMask(node, i, getMask(node, --length));
+					removed++;
+				}
+			}
+			set(node, LENGTH, length);
+		} else {
+			removed = removeSubsets(get(node, NOT_VISITED), depth + 1, mask);
+			if ((mask & (1L << depth)) != 0) {
+				removed += removeSubsets(get(node, VISITED), depth + 1, mask);
+			}
+		}
+		count -= removed;
+		set(node, COUNT, count);
+		if (length < 0 && count <= bucketSize / 2) {
+			merge(node);
+		}
+		return removed;
+	}
+
+	// Turns a bucket into two child buckets, divided on the stadium for this
+	// depth.
+	private void split(int node, int depth) {
+		if (depth == numStadiums) {
+			return;
+		}
+		long[] masks = new long[get(node, LENGTH)];
+		for (int i = 0; i < masks.length; i++) {
+			masks[i] = getMask(node, i);
+		}
+		int notVisited = newBucket();
+		int visited = newBucket();
+		for (long mask : masks) {
+			addToBucket((mask & (1L << depth)) == 0 ? notVisited : visited, mask);
+		}
+		set(node, LENGTH, -1);
+		set(node, NOT_VISITED, notVisited);
+		set(node, VISITED, visited);
+		if (get(notVisited, LENGTH) > bucketSize) {
+			split(notVisited, depth + 1);
+		}
+		if (get(visited, LENGTH) > bucketSize) {
+			split(visited, depth + 1);
+		}
+	}
+
+	// Turns a subtree back into a single bucket.
+	private void merge(int node) {
+		TLongArrayList masks = new TLongArrayList(get(node, COUNT));
+		collect(node, masks);
+		freeSubtree(get(node, NOT_VISITED));
+		freeSubtree(get(node, VISITED));
+		set(node, NOT_VISITED, 0);
+		set(node, VISITED, 0);
+		set(node, LENGTH, 0);
+		set(node, COUNT, 0);
+		for (int i = 0; i < masks.size(); i++) {
+			addToBucket(node, masks.getQuick(i));
+		}
+	}
+
+	/**
+	 * @return the number of masks stored under all keys.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes every mask. Memory that has already been allocated is kept for
+	 * reuse.
+	 */
+	public void clear() {
+		Arrays.fill(roots, 0);
+		nodeCount = 1;
+		freeList = 0;
+		numFree = 0;
+		size = 0;
+	}
+
+	/**
+	 * Calls the procedure with every stored key and mask, until it returns
+	 * <code>false</code>.
+	 */
+	public void forEach(TShortLongProcedure procedure) {
+		TLongArrayList masks = new TLongArrayList();
+		for (int key = 0; key < NUM_KEYS; key++) {
+			if (roots[key] == 0) {
+				continue;
+			}
+			masks.resetQuick();
+			collect(roots[key], masks);
+			for (int i = 0; i < masks.size(); i++) {
+				if (!procedure.execute((short) key, masks.getQuick(i))) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Releases the scratch file, if there is one.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			segments = new IntBuffer[0];
+			channel.close();
+		}
+	}
+
+	private void collect(int node, TLongArrayList masks) {
+		int length = get(node, LENGTH);
+		if (length >= 0) {
+			for (int i = 0; i < length; i++) {
+				masks.add(getMask(node, i));
+			}
+		} else {
+			collect(get(node, NOT_VISITED), masks);
+			collect(get(node, VISITED), masks);
+		}
+	}
+
+	private void addToBucket(int node, long mask) {
+		int length = get(node, LENGTH);
+		setMask(node, length, mask);
+		set(node, LENGTH, length + 1);
+		set(node, COUNT, get(node, COUNT) + 1);
+	}
+
+	private int newBucket() {
+		int node;
+		if (numFree > 0) {
+			node = freeList;
+			freeList = get(node, NOT_VISITED);
+			numFree--;
+		} else {
+			node = nodeCount++;
+			int segment = node / SEGMENT_NODES;
+			if (segment == segments.length) {
+				segments = Arrays.copyOf(segments, 2 * segments.length);
+			}
+			if (segments[segment] == null) {
+				segments[segment] = allocate(segment);
+			}
+		}
+		set(node, NOT_VISITED, 0);
+		set(node, VISITED, 0);
+		set(node, COUNT, 0);
+		set(node, LENGTH, 0);
+		return node;
+	}
+
+	private IntBuffer allocate(int segment) {
+		if (channel != null) {
+			try {
+				return channel.map(FileChannel.MapMode.READ_WRITE, (long) segment * SEGMENT_BYTES, SEGMENT_BYTES)
+						.order(ByteOrder.nativeOrder()).asIntBuffer();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		if (direct) {
+			return ByteBuffer.allocateDirect(SEGMENT_BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+		}
+		return IntBuffer.allocate(SEGMENT_BYTES / 4);
+	}
+
+	private void freeSubtree(int node) {
+		if (get(node, LENGTH) < 0) {
+			freeSubtree(get(node, NOT_VISITED));
+			freeSubtree(get(node, VISITED));
+		}
+		set(node, NOT_VISITED, freeList);
+		freeList = node;
+		numFree++;
+	}
+
+	// the ith mask in a bucket
+	private long getMask(int node, int i) {
+		if (wide) {
+			return (long) get(node, MASKS + 2 * i) << 32 | (get(node, MASKS + 2 * i + 1) & 0xFFFFFFFFL);
+		}
+		return get(node, MASKS + i) & 0xFFFFFFFFL;
+	}
+
+	private void setMask(int node, int i, long mask) {
+		if (wide) {
+			set(node, MASKS + 2 * i, (int) (mask >>> 32));
+			set(node, MASKS + 2 * i + 1, (int) mask);
+		} else {
+			set(node, MASKS + i, (int) mask);
+		}
+	}
+
+	private int get(int node, int field) {
+		return segments[node / SEGMENT_NODES].get((node % SEGMENT_NODES) * NODE_SIZE + field);
+	}
+
+	private void set(int node, int field, int value) {
+		segments[node / SEGMENT_NODES].put((node % SEGMENT_NODES) * NODE_SIZE + field, value);
+	}
+
+}
@@ -0,0 +1,195 @@
+package org.mountm.mlb.backtracking;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes a linear program one term at a time. Terms are written (or, for MPS,
+ * collected) as soon as they are added, so the size of a row does not affect
+ * the cost of adding to it. Separators between terms and line wrapping are
+ * handled by the writer.
+ *
+ * The parts of the model must be given in the order they appear in an LP
+ * file: the objective, then the constraints, bounds, general integer
+ * variables and binary variables. Rows without any terms are left out.
+ *
+ * The model is written to a temporary file next to the target, which is only
+ * moved into place when the writer is closed. A model that fails part way
+ * through never replaces a complete one: callers close the writer only when
+ * the whole model has been written, and {@link #abort()} it otherwise.
+ *
+ */
+public abstract class ModelWriter implements Closeable {
+
+	public enum Format {
+		LP, MPS;
+
+		/**
+		 * @return the format to use for an option value such as "lp" or "mps"
+		 */
+		public static Format of(String name) {
+			return valueOf(name.toUpperCase());
+		}
+
+		public String extension() {
+			return "." + name().toLowerCase();
+		}
+	}
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final String NEW_LINE = System.lineSeparator();
+
+	private final Path path;
+	private final Path temp;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private final byte[] digits = new byte[20];
+	private int column = 0;
+
+	protected ModelWriter(File file) throws IOException {
+		path = file.toPath();
+		temp = path.resolveSibling(path.getFileName() + ".tmp");
+		channel = new FileOutputStream(temp.toFile()).getChannel();
+	}
+
+	/**
+	 * @return a writer for the specified format. The file is replaced if it
+	 *         already exists.
+	 */
+	public static ModelWriter open(File file, Format format) throws IOException {
+		return format == Format.MPS ? new MpsModelWriter(file) : new LpModelWriter(file);
+	}
+
+	/**
+	 * Starts the objective, which is always minimized.
+	 */
+	public abstract void minimize() throws IOException;
+
+	/**
+	 * Starts a new constraint.
+	 *
+	 * @param name
+	 *            The name of the row, or <code>null</code> to let the format
+	 *            choose one.
+	 */
+	public abstract void constraint(String name) throws IOException;
+
+	/**
+	 * Adds a term to the objective or constraint that was started last.
+	 */
+	public abstract void term(long coefficient, String variable) throws IOException;
+
+	public void term(String variable) throws IOException {
+		term(1, variable);
+	}
+
+	/**
+	 * Ends the current constraint with <code>terms &lt;= rhs</code>.
+	 */
+	public void atMost(long rhs) throws IOException {
+		endConstraint('L', rhs);
+	}
+
+	/**
+	 * Ends the current constraint with <code>terms = rhs</code>.
+	 */
+	public void exactly(long rhs) throws IOException {
+		endConstraint('E', rhs);
+	}
+
+	// sense is one of the MPS row types L, E or G
+	protected abstract void endConstraint(char sense, long rhs) throws IOException;
+
+	public abstract void bounds(long lower, String variable, long upper) throws IOException;
+
+	public abstract void integer(String variable) throws IOException;
+
+	public abstract void binary(String variable) throws IOException;
+
+	/**
+	 * Writes anything that is left, closes the file and moves it into place.
+	 */
+	@Override
+	public void close() throws IOException {
+		flush();
+		channel.close();
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Closes the file and deletes it without replacing the target, for a
+	 * model that could not be finished. Errors are ignored so that the one
+	 * that stopped the model is the one reported.
+	 */
+	public void abort() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// the file is deleted anyway
+		}
+		try {
+			Files.deleteIfExists(temp);
+		} catch (IOException e) {
+			System.out.println("Could not delete " + temp + ": " + e);
+		}
+	}
+
+	// The model only contains ASCII names, so characters are written as
+	// single bytes.
+	protected void write(String s) throws IOException {
+		for (int i = 0; i < s.length(); i++) {
+			write((byte) s.charAt(i));
+		}
+	}
+
+	protected void write(long value) throws IOException {
+		if (value < 0) {
+			write((byte) '-');
+			value = -value;
+		}
+		int n = 0;
+		do {
+			digits[n++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		while (n > 0) {
+			write(digits[--n]);
+		}
+	}
+
+	protected void newLine() throws IOException {
+		write(NEW_LINE);
+		column = 0;
+	}
+
+	/**
+	 * @return the number of characters written since the last line break
+	 */
+	protected int column() {
+		return column;
+	}
+
+	private void write(byte b) throws IOException {
+		if (!buffer.hasRemaining()) {
+			flush();
+		}
+		buffer.put(b);
+		column++;
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+}
@@ -0,0 +1,249 @@
+package org.mountm.mlb.backtracking;
+
+import gnu.trove.list.TByteList;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TByteArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.TIntLongMap;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TIntLongHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a model in free MPS format. MPS lists the matrix one column at a
+ * time, so the terms are collected in primitive lists and the file is written
+ * when the writer is closed.
+ *
+ */
+class MpsModelWriter extends ModelWriter {
+
+	private static final String OBJECTIVE_ROW = "COST";
+	private static final byte CONTINUOUS = 0;
+	private static final byte INTEGER = 1;
+	private static final byte BINARY = 2;
+
+	private final String modelName;
+
+	private final List<String> rowNames = new ArrayList<>();
+	private final StringBuilder rowSenses = new StringBuilder();
+	private final TLongList rhs = new TLongArrayList();
+	private int currentRow = -1;
+	private int termsInRow = 0;
+
+	private final TObjectIntMap<String> columnIndex = new TObjectIntHashMap<>(1024, 0.5f, -1);
+	private final List<String> columnNames = new ArrayList<>();
+	private final TByteList columnTypes = new TByteArrayList();
+	private final TIntLongMap lowerBounds = new TIntLongHashMap();
+	private final TIntLongMap upperBounds = new TIntLongHashMap();
+
+	// the matrix, including the objective, in the order the terms were added
+	private final TIntList entryRows = new TIntArrayList();
+	private final TIntList entryColumns = new TIntArrayList();
+	private final TLongList entryValues = new TLongArrayList();
+
+	MpsModelWriter(File file) throws IOException {
+		super(file);
+		String name = file.getName();
+		modelName = name.indexOf('.') > 0 ? name.substring(0, name.indexOf('.')) : name;
+	}
+
+	@Override
+	public void minimize() throws IOException {
+		startRow(OBJECTIVE_ROW);
+	}
+
+	@Override
+	public void constraint(String name) throws IOException {
+		startRow(name == null ? "R" + rowNames.size() : name);
+	}
+
+	@Override
+	public void term(long coefficient, String variable) throws IOException {
+		entryRows.add(currentRow);
+		entryColumns.add(column(variable));
+		entryValues.add(coefficient);
+		termsInRow++;
+	}
+
+	@Override
+	protected void endConstraint(char sense, long value) throws IOException {
+		if (termsInRow == 0) {
+			// nothing refers to the row yet, so it can be dropped
+			rowNames.remove(currentRow);
+			rowSenses.setLength(currentRow);
+			rhs.removeAt(currentRow);
+		} else {
+			rowSenses.setCharAt(currentRow, sense);
+			rhs.set(currentRow, value);
+		}
+		currentRow = -1;
+	}
+
+	@Override
+	public void bounds(long lower, String variable, long upper) throws IOException {
+		int col = column(variable);
+		lowerBounds.put(col, lower);
+		upperBounds.put(col, upper);
+	}
+
+	@Override
+	public void integer(String variable) throws IOException {
+		columnTypes.set(column(variable), INTEGER);
+	}
+
+	@Override
+	public void binary(String variable) throws IOException {
+		columnTypes.set(column(variable), BINARY);
+	}
+
+	@Override
+	public void close() throws IOException {
+		write("NAME ");
+		write(modelName);
+		newLine();
+
+		write("ROWS");
+		newLine();
+		for (int row = 0; row < rowNames.size(); row++) {
+			write(" ");
+			write(String.valueOf(rowSenses.charAt(row)));
+			write(" ");
+			write(rowNames.get(row));
+			newLine();
+		}
+
+		writeColumns();
+
+		write("RHS");
+		newLine();
+		for (int row = 0; row < rowNames.size(); row++) {
+			if (rhs.get(row) != 0 && rowSenses.charAt(row) != 'N') {
+				write("    RHS ");
+				write(rowNames.get(row));
+				write(" ");
+				write(rhs.get(row));
+				newLine();
+			}
+		}
+
+		write("BOUNDS");
+		newLine();
+		for (int col = 0; col < columnNames.size(); col++) {
+			String name = columnNames.get(col);
+			if (columnTypes.get(col) == BINARY) {
+				writeBound("BV", name);
+				newLine();
+			} else if (lowerBounds.containsKey(col)) {
+				writeBound("LO", name);
+				write(" ");
+				write(lowerBounds.get(col));
+				newLine();
+				writeBound("UP", name);
+				write(" ");
+				write(upperBounds.get(col));
+				newLine();
+			} else if (columnTypes.get(col) == INTEGER) {
+				// some readers give integer columns without bounds an upper
+				// bound of one
+				writeBound("PL", name);
+				newLine();
+			}
+		}
+		write("ENDATA");
+		newLine();
+		super.close();
+	}
+
+	private void startRow(String name) {
+		currentRow = rowNames.size();
+		termsInRow = 0;
+		rowNames.add(name);
+		rowSenses.append('N');
+		rhs.add(0);
+	}
+
+	private int column(String variable) {
+		int col = columnIndex.get(variable);
+		if (col < 0) {
+			col = columnNames.size();
+			columnIndex.put(variable, col);
+			columnNames.add(variable);
+			columnTypes.add(CONTINUOUS);
+		}
+		return col;
+	}
+
+	// Sorts the entries by column with a counting sort, then writes them.
+	// Integer and binary columns are wrapped in markers.
+	private void writeColumns() throws IOException {
+		int numColumns = columnNames.size();
+		int[] start = new int[numColumns + 1];
+		for (int i = 0; i < entryColumns.size(); i++) {
+			start[entryColumns.get(i) + 1]++;
+		}
+		for (int col = 0; col < numColumns; col++) {
+			start[col + 1] += start[col];
+		}
+		int[] order = new int[entryColumns.size()];
+		int[] next = new int[numColumns];
+		System.arraycopy(start, 0, next, 0, numColumns);
+		for (int i = 0; i < entryColumns.size(); i++) {
+			order[next[entryColumns.get(i)]++] = i;
+		}
+
+		write("COLUMNS");
+		newLine();
+		boolean inMarker = false;
+		int markers = 0;
+		for (int col = 0; col < numColumns; col++) {
+			boolean integer = columnTypes.get(col) != CONTINUOUS;
+			if (integer != inMarker) {
+				write("    MARKER");
+				write(markers++);
+				write(integer ? " 'MARKER' 'INTORG'" : " 'MARKER' 'INTEND'");
+				newLine();
+				inMarker = integer;
+			}
+			String name = columnNames.get(col);
+			if (start[col] == start[col + 1]) {
+				// columns must appear in the matrix to exist
+				write("    ");
+				write(name);
+				write(" ");
+				write(OBJECTIVE_ROW);
+				write(" 0");
+				newLine();
+			}
+			for (int i = start[col]; i < start[col + 1]; i++) {
+				write("    ");
+				write(name);
+				write(" ");
+				write(rowNames.get(entryRows.get(order[i])));
+				write(" ");
+				write(entryValues.get(order[i]));
+				newLine();
+			}
+		}
+		if (inMarker) {
+			write("    MARKER");
+			write(markers);
+			write(" 'MARKER' 'INTEND'");
+			newLine();
+		}
+	}
+
+	private void writeBound(String type, String column) throws IOException {
+		write(" ");
+		write(type);
+		write(" BND ");
+		write(column);
+	}
+
+}
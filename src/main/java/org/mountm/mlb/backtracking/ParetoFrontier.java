@@ -0,0 +1,119 @@
+package org.mountm.mlb.backtracking;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The best trips found so far for every number of days up to a limit, for
+ * finding the trade-off between trip days and driving time in one search.
+ * A trip is on the frontier if every trip with the same number of days or
+ * fewer has more driving.
+ *
+ * The search prunes a partial solution against {@link #bound(int)} for the
+ * fewest days any of its completions can take: every completion takes at
+ * least that many days and drives at least as far, so if it cannot beat the
+ * trips with that many days or fewer it is dominated. Bounds are read without
+ * locking by every search thread.
+ *
+ */
+public class ParetoFrontier {
+
+	private final int maxDays;
+	// the best trip length with at most d days, or the maximum trip length
+	private final AtomicIntegerArray bound;
+	// the best trip with exactly d days, and its length
+	private final int[][] routes;
+	private final int[] lengths;
+
+	/**
+	 * @param maxDays
+	 *            The most days a trip may take
+	 * @param maxTripLength
+	 *            The most driving a trip may take, in minutes
+	 */
+	public ParetoFrontier(int maxDays, int maxTripLength) {
+		this.maxDays = maxDays;
+		bound = new AtomicIntegerArray(maxDays + 1);
+		for (int d = 0; d <= maxDays; d++) {
+			bound.set(d, maxTripLength);
+		}
+		routes = new int[maxDays + 1][];
+		lengths = new int[maxDays + 1];
+		Arrays.fill(lengths, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @return the length of the best trip of at most the specified number of
+	 *         days, or the maximum trip length if there is none
+	 */
+	public int bound(int days) {
+		return bound.get(Math.min(days, maxDays));
+	}
+
+	/**
+	 * Keeps the trip if it is the best one with its number of days. Ties go
+	 * to the trip that comes last in the order the sequential search visits
+	 * them, so the parallel search keeps the same trips.
+	 *
+	 * @param games
+	 *            The games in the trip, in order
+	 * @return true if the trip was kept
+	 */
+	public synchronized boolean offer(int days, int length, int[] games) {
+		if (length > lengths[days]
+				|| (length == lengths[days] && compare(games, routes[days]) < 0)) {
+			return false;
+		}
+		lengths[days] = length;
+		routes[days] = games;
+		for (int d = days; d <= maxDays && bound.get(d) > length; d++) {
+			bound.set(d, length);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the numbers of days that have a trip on the frontier, fewest
+	 *         first
+	 */
+	public synchronized int[] days() {
+		TIntArrayList days = new TIntArrayList();
+		int best = Integer.MAX_VALUE;
+		for (int d = 0; d <= maxDays; d++) {
+			if (lengths[d] < best) {
+				best = lengths[d];
+				days.add(d);
+			}
+		}
+		return days.toArray();
+	}
+
+	/**
+	 * @return the length of the best trip with exactly the specified number
+	 *         of days
+	 */
+	public synchronized int length(int days) {
+		return lengths[days];
+	}
+
+	/**
+	 * @return the games in the best trip with exactly the specified number of
+	 *         days, or null if there is none
+	 */
+	public synchronized int[] route(int days) {
+		return routes[days];
+	}
+
+	private static int compare(int[] r1, int[] r2) {
+		for (int i = 0; i < r1.length && i < r2.length; i++) {
+			int diff = r1[i] - r2[i];
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return r1.length - r2.length;
+	}
+
+}
@@ -0,0 +1,225 @@
+package org.mountm.mlb.backtracking;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The file that keeps the contents of noExtensions between runs. It starts
+ * with a header, followed by fixed-size records of a game index and a stadium
+ * mask:
+ *
+ * <pre>
+ * int   magic ("MLBX")
+ * int   version
+ * int   day of the year the trips start on
+ * int   maximum number of days in a trip
+ * long  checksum of the schedule
+ * int   checksum of the venues and driving times
+ * {short game index, int stadium mask} repeated
+ * </pre>
+ *
+ * Circuits of more than 32 stadiums write version 4 files, whose records have
+ * a long stadium mask instead. The checksums are those of
+ * {@link ScheduleLoader}, so a file written for another schedule or driving
+ * time model is not read.
+ *
+ * Records are appended while the search runs and forced to disk at every
+ * checkpoint, so a crash loses at most the records added since the last
+ * checkpoint. A record can be made redundant by a later one; compacting
+ * rewrites the file with only the records still in use.
+ *
+ */
+public class PruningLog implements Closeable {
+
+	private static final int MAGIC = 0x4D4C4258;
+	private static final int NARROW_VERSION = 3;
+	private static final int WIDE_VERSION = 4;
+	private static final int HEADER_SIZE = 28;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final Path path;
+	private final boolean wide;
+	private final int version;
+	private final int recordSize;
+	private final long scheduleChecksum;
+	private final int drivingChecksum;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private FileChannel channel;
+	private int startDay;
+	private int numDays;
+	private long records = 0;
+
+	/**
+	 * @param scheduleChecksum
+	 *            The checksum of the schedule, from
+	 *            {@link ScheduleLoader#checksum()}
+	 * @param drivingChecksum
+	 *            The checksum of the driving times, from
+	 *            {@link ScheduleLoader#drivingChecksum()}
+	 */
+	public PruningLog(File file, int numStadiums, long scheduleChecksum, int drivingChecksum) {
+		this.path = file.toPath();
+		wide = numStadiums > Integer.SIZE;
+		version = wide ? WIDE_VERSION : NARROW_VERSION;
+		recordSize = wide ? 10 : 6;
+		this.scheduleChecksum = scheduleChecksum;
+		this.drivingChecksum = drivingChecksum;
+	}
+
+	/**
+	 * Adds every record in the file to the specified collection. The file is
+	 * memory mapped, so its contents are not copied onto the heap first.
+	 *
+	 * @return the number of records read, or -1 if the file does not exist or
+	 *         was written for a different start day, day limit, schedule or
+	 *         driving times.
+	 */
+	public int read(MaskTrie noExtensions, int startDay, int numDays) throws IOException {
+		if (!Files.exists(path)) {
+			return -1;
+		}
+		try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = in.size();
+			if (size < HEADER_SIZE) {
+				System.out.println(path + " is not a pruning data file, ignoring it");
+				return -1;
+			}
+			MappedByteBuffer map = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (map.getInt() != MAGIC || map.getInt() != version) {
+				System.out.println(path + " is not a version " + version + " pruning data file, ignoring it");
+				return -1;
+			}
+			if (map.getInt() != startDay || map.getInt() != numDays) {
+				System.out.println(path + " was written for a different start day or day limit, ignoring it");
+				return -1;
+			}
+			if (map.getLong() != scheduleChecksum || map.getInt() != drivingChecksum) {
+				System.out.println(path + " was written for a different schedule or driving times, ignoring it");
+				return -1;
+			}
+			// a record that was only partly written before a crash is ignored
+			int numRecords = (int) ((size - HEADER_SIZE) / recordSize);
+			for (int i = 0; i < numRecords; i++) {
+				short key = map.getShort();
+				noExtensions.add(key, wide ? map.getLong() : map.getInt() & 0xFFFFFFFFL);
+			}
+			return numRecords;
+		}
+	}
+
+	/**
+	 * Replaces the file with one that holds the contents of the specified
+	 * collection, and keeps it open for appending. The new file is written
+	 * next to the old one and moved into place, so a crash while compacting
+	 * leaves the old file intact.
+	 */
+	public void compact(MaskTrie noExtensions, int startDay, int numDays) throws IOException {
+		closeChannel();
+		this.startDay = startDay;
+		this.numDays = numDays;
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		records = 0;
+		writeHeader();
+		try {
+			noExtensions.forEach((key, mask) -> {
+				try {
+					append(key, mask);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return true;
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		checkpoint();
+		channel.close();
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Adds a record to the end of the file. Records are buffered until the
+	 * buffer is full or the next checkpoint.
+	 */
+	public void append(short key, long mask) throws IOException {
+		if (buffer.remaining() < recordSize) {
+			writeBuffer();
+		}
+		buffer.putShort(key);
+		if (wide) {
+			buffer.putLong(mask);
+		} else {
+			buffer.putInt((int) mask);
+		}
+		records++;
+	}
+
+	/**
+	 * Writes any buffered records and forces the file to disk.
+	 */
+	public void checkpoint() throws IOException {
+		if (channel != null) {
+			writeBuffer();
+			channel.force(false);
+		}
+	}
+
+	/**
+	 * @return the number of records in the file, including buffered records
+	 */
+	public long records() {
+		return records;
+	}
+
+	public int startDay() {
+		return startDay;
+	}
+
+	public int numDays() {
+		return numDays;
+	}
+
+	public boolean isOpen() {
+		return channel != null;
+	}
+
+	@Override
+	public void close() throws IOException {
+		checkpoint();
+		closeChannel();
+	}
+
+	private void writeHeader() throws IOException {
+		buffer.putInt(MAGIC).putInt(version).putInt(startDay).putInt(numDays).putLong(scheduleChecksum)
+				.putInt(drivingChecksum);
+	}
+
+	private void writeBuffer() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private void closeChannel() throws IOException {
+		buffer.clear();
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
+}
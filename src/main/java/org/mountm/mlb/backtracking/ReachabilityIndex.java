@@ -0,0 +1,135 @@
+package org.mountm.mlb.backtracking;
+
+import java.util.List;
+
+/**
+ * Precomputed answers to {@link Game#canReach(Game)} for every pair of games
+ * in a sorted schedule. Built once per schedule so that the search loops can
+ * replace date arithmetic with an array lookup.
+ *
+ * Reachability is only interesting for a few days after each game: once the
+ * day difference is large enough to cover the longest drive in the
+ * {@link Stadium} matrix, every later game can be reached. For each game we
+ * store the index of the first game after which everything is reachable (the
+ * horizon), and a bitset covering the games between the two.
+ *
+ */
+public class ReachabilityIndex {
+
+	private static final int MAX_DRIVING = 720;
+
+	private final int[] horizon;
+	private final int[] wordOffset;
+	private final long[] bits;
+
+	/**
+	 * @param games
+	 *            The schedule, sorted by start time.
+	 */
+	public ReachabilityIndex(List<Game> games) {
+		this(games, DrivingTimes.STATIC);
+	}
+
+	/**
+	 * @param games
+	 *            The schedule, sorted by start time.
+	 * @param times
+	 *            The driving times used to decide whether a game can be
+	 *            reached
+	 */
+	public ReachabilityIndex(List<Game> games, DrivingTimes times) {
+		int n = games.size();
+		int window = reachWindow(times);
+		horizon = new int[n];
+		wordOffset = new int[n + 1];
+		long[][] rows = new long[n][];
+		for (int i = 0; i < n; i++) {
+			Game g1 = games.get(i);
+			int lastDay = g1.dayIndex() + window;
+			int end = i + 1;
+			while (end < n && games.get(end).dayIndex() < lastDay) {
+				end++;
+			}
+			long[] row = new long[((end - i - 1) >>> 6) + 1];
+			int lastUnreachable = i;
+			for (int j = i + 1; j < end; j++) {
+				if (g1.canReach(games.get(j), times)) {
+					int bit = j - i - 1;
+					row[bit >>> 6] |= 1L << bit;
+				} else {
+					lastUnreachable = j;
+				}
+			}
+			horizon[i] = lastUnreachable + 1;
+			rows[i] = row;
+			// only the words up to the horizon need to be kept
+			wordOffset[i + 1] = wordOffset[i] + words(i, horizon[i]);
+		}
+		bits = new long[wordOffset[n]];
+		for (int i = 0; i < n; i++) {
+			System.arraycopy(rows[i], 0, bits, wordOffset[i], wordOffset[i + 1] - wordOffset[i]);
+		}
+	}
+
+	/**
+	 * Rebuilds an index from its horizons and the bitsets of every game, one
+	 * after another. Used by {@link ScheduleLoader} to read a snapshot.
+	 */
+	ReachabilityIndex(int[] horizon, long[] bits) {
+		int n = horizon.length;
+		this.horizon = horizon;
+		this.bits = bits;
+		wordOffset = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			wordOffset[i + 1] = wordOffset[i] + words(i, horizon[i]);
+		}
+	}
+
+	// the number of words kept for a game: enough for every game between it
+	// and its horizon
+	static int words(int from, int horizon) {
+		return ((horizon - 1 - from) >>> 6) + 1;
+	}
+
+	/**
+	 * Equivalent to <code>games.get(from).canReach(games.get(to))</code> for
+	 * the schedule this index was built from.
+	 *
+	 * @param from
+	 *            The index of the game you are leaving.
+	 * @param to
+	 *            The index of the game you are attempting to reach.
+	 * @return <code>true</code> if the second game can be reached from the
+	 *         first game; <code>false</code> otherwise
+	 */
+	public boolean canReach(int from, int to) {
+		if (to <= from) {
+			return false;
+		}
+		if (to >= horizon[from]) {
+			return true;
+		}
+		int bit = to - from - 1;
+		return (bits[wordOffset[from] + (bit >>> 6)] & (1L << bit)) != 0;
+	}
+
+	/**
+	 * @return the index of the first game such that it, and every game after
+	 *         it, can be reached from the specified game.
+	 */
+	public int horizon(int from) {
+		return horizon[from];
+	}
+
+	public int size() {
+		return horizon.length;
+	}
+
+	// The number of days after which the longest drive in the matrix is
+	// always possible (see the day-by-day loop in Game.canReach).
+	private static int reachWindow(DrivingTimes times) {
+		int longestDrive = times.longest();
+		return 2 + (longestDrive + MAX_DRIVING - 1) / MAX_DRIVING;
+	}
+
+}
@@ -0,0 +1,183 @@
+package org.mountm.mlb.backtracking;
+
+/**
+ * A partial solution that is extended and shortened one game at a time. Games
+ * are identified by their index in the {@link Schedule}. Everything the search
+ * needs to know about the games in the route (which
+ * stadiums were visited, how much driving is involved, the number of double
+ * headers and rest days) is stored for each prefix of the route, so pushing
+ * or popping a game is a constant time operation that does not allocate.
+ *
+ */
+public class Route {
+
+	private final Schedule schedule;
+	// one game per venue
+	private final int[] games;
+	// The remaining arrays describe the route made up of the first i + 1 games
+	private final long[] visited;
+	private final int[] drivingMinutes;
+	private final int[] doubleHeaders;
+	private final int[] restDays;
+	private int size = 0;
+
+	public Route(Schedule schedule) {
+		this.schedule = schedule;
+		int maxSize = schedule.venues().size();
+		games = new int[maxSize];
+		visited = new long[maxSize];
+		drivingMinutes = new int[maxSize];
+		doubleHeaders = new int[maxSize];
+		restDays = new int[maxSize];
+	}
+
+	/**
+	 * @return a copy of this route that can be modified independently.
+	 */
+	public Route copy() {
+		Route copy = new Route(schedule);
+		System.arraycopy(games, 0, copy.games, 0, size);
+		System.arraycopy(visited, 0, copy.visited, 0, size);
+		System.arraycopy(drivingMinutes, 0, copy.drivingMinutes, 0, size);
+		System.arraycopy(doubleHeaders, 0, copy.doubleHeaders, 0, size);
+		System.arraycopy(restDays, 0, copy.restDays, 0, size);
+		copy.size = size;
+		return copy;
+	}
+
+	/**
+	 * Adds a game to the end of the route.
+	 *
+	 * @param g
+	 *            The index of the next game. It must not be at a stadium that
+	 *            is already in the route.
+	 */
+	public void push(int g) {
+		int stadium = schedule.stadiumIndex(g);
+		if (size == 0) {
+			visited[0] = 1L << stadium;
+			// the drive to the first game can start at any time
+			drivingMinutes[0] = schedule.drivingTimes().fastest(schedule.venues().home(), stadium);
+			doubleHeaders[0] = 0;
+			restDays[0] = 0;
+		} else {
+			int last = games[size - 1];
+			int dayDiff = schedule.day(g) - schedule.day(last);
+			visited[size] = visited[size - 1] | 1L << stadium;
+			drivingMinutes[size] = drivingMinutes[size - 1] + schedule.drivingMinutes(last, g);
+			doubleHeaders[size] = doubleHeaders[size - 1] + (dayDiff == 0 ? 1 : 0);
+			restDays[size] = restDays[size - 1] + (dayDiff > 1 ? dayDiff - 1 : 0);
+		}
+		games[size++] = g;
+	}
+
+	/**
+	 * Removes the last game from the route.
+	 *
+	 * @return the index of the game that was removed
+	 */
+	public int pop() {
+		return games[--size];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return the index of the ith game in the route
+	 */
+	public int get(int i) {
+		return games[i];
+	}
+
+	/**
+	 * @return the indices of the games in the route, in order
+	 */
+	public int[] toArray() {
+		int[] result = new int[size];
+		System.arraycopy(games, 0, result, 0, size);
+		return result;
+	}
+
+	public int first() {
+		return games[0];
+	}
+
+	public int last() {
+		return games[size - 1];
+	}
+
+	public Schedule getSchedule() {
+		return schedule;
+	}
+
+	/**
+	 * @return A long whose nth bit represents whether the nth stadium has been
+	 *         visited.
+	 */
+	public long visited() {
+		return size == 0 ? 0 : visited[size - 1];
+	}
+
+	/**
+	 * @return the stadiums visited before the last game in the route.
+	 */
+	public long visitedBeforeLast() {
+		return size < 2 ? 0 : visited[size - 2];
+	}
+
+	/**
+	 * @param stadium
+	 *            The index of a stadium, as in {@link Schedule#stadiumIndex}
+	 */
+	public boolean hasVisited(int stadium) {
+		return (visited() & 1L << stadium) != 0;
+	}
+
+	/**
+	 * @return the driving time from the home venue to the first game and between
+	 *         each pair of games in the route.
+	 */
+	public int drivingMinutes() {
+		return size == 0 ? 0 : drivingMinutes[size - 1];
+	}
+
+	/**
+	 * @return the number of times two consecutive games are on the same day.
+	 */
+	public int doubleHeaders() {
+		return size == 0 ? 0 : doubleHeaders[size - 1];
+	}
+
+	/**
+	 * @return the number of days between games where no game is attended.
+	 */
+	public int restDays() {
+		return size == 0 ? 0 : restDays[size - 1];
+	}
+
+	/**
+	 * @return <code>true</code> if the last two games are on the same day.
+	 */
+	public boolean endsWithDoubleHeader() {
+		return size > 1 && schedule.day(games[size - 2]) == schedule.day(games[size - 1]);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(schedule.game(games[i]));
+		}
+		return sb.append("]").toString();
+	}
+
+}
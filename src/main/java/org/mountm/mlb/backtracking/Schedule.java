@@ -0,0 +1,170 @@
+package org.mountm.mlb.backtracking;
+
+import java.util.List;
+
+/**
+ * The master game list stored as parallel primitive arrays. A game is
+ * identified by its index in the schedule, and the search reads start times,
+ * days and stadiums directly from the arrays instead of going through
+ * {@link Game} objects. Games are only created when they need to be printed.
+ * Stadiums are venue indices in the registry of the driving times.
+ *
+ * Start times and days count from the start of the year of the first game.
+ * A schedule that runs past December 31 keeps counting, so day 367 of a
+ * schedule that starts in 2018 is January 2, 2019, and differences between
+ * days are correct across the year boundary.
+ *
+ */
+public class Schedule {
+
+	// the year of the first game
+	private final int year;
+	// minutes since the start of the year, as in Game.getStartTime(), but
+	// continuing past the end of the year
+	private final int[] startMinute;
+	private final short[] day;
+	private final byte[] stadium;
+	// the driving times, and the bucket for leaving each game when it ends
+	private final DrivingTimes times;
+	private final Venues venues;
+	private final short[] departureBucket;
+
+	/**
+	 * @param games
+	 *            The games in the schedule, sorted by start time
+	 */
+	public Schedule(List<Game> games) {
+		this(games, DrivingTimes.STATIC);
+	}
+
+	/**
+	 * @param games
+	 *            The games in the schedule, sorted by start time
+	 * @param times
+	 *            The driving times between games
+	 */
+	public Schedule(List<Game> games, DrivingTimes times) {
+		int n = games.size();
+		year = n == 0 ? 0 : games.get(0).year();
+		int firstMinute = yearStart(year);
+		startMinute = new int[n];
+		day = new short[n];
+		stadium = new byte[n];
+		for (int i = 0; i < n; i++) {
+			Game g = games.get(i);
+			startMinute[i] = g.epochMinute() - firstMinute;
+			day[i] = (short) (startMinute[i] / 1440);
+			stadium[i] = (byte) g.stadiumIndex();
+		}
+		this.times = times;
+		venues = times.venues();
+		departureBucket = departureBuckets();
+	}
+
+	/**
+	 * @param startMinute
+	 *            The start time of each game, in minutes since the start of
+	 *            the year of the first game
+	 * @param stadium
+	 *            The index of each game's stadium
+	 */
+	Schedule(int year, int[] startMinute, byte[] stadium, DrivingTimes times) {
+		this.year = year;
+		this.startMinute = startMinute;
+		this.stadium = stadium;
+		day = new short[startMinute.length];
+		for (int i = 0; i < startMinute.length; i++) {
+			day[i] = (short) (startMinute[i] / 1440);
+		}
+		this.times = times;
+		venues = times.venues();
+		departureBucket = departureBuckets();
+	}
+
+	public int size() {
+		return startMinute.length;
+	}
+
+	/**
+	 * @return the game at the specified index. A new object is created on
+	 *         every call, so this should not be used while searching.
+	 */
+	public Game game(int i) {
+		return new Game(venues, stadiumIndex(i), epochMinute(i), i);
+	}
+
+	public DrivingTimes drivingTimes() {
+		return times;
+	}
+
+	public Venues venues() {
+		return venues;
+	}
+
+	/**
+	 * @return the driving time from one game to another, leaving when the
+	 *         first game ends
+	 */
+	public int drivingMinutes(int from, int to) {
+		return times.minutes(departureBucket[from], stadiumIndex(from), stadiumIndex(to));
+	}
+
+	/**
+	 * @return the driving time from a game back home (Baltimore), leaving
+	 *         when the game ends
+	 */
+	public int minutesHome(int i) {
+		return times.minutes(departureBucket[i], stadiumIndex(i), venues.home());
+	}
+
+	int year() {
+		return year;
+	}
+
+	public int startMinute(int i) {
+		return startMinute[i];
+	}
+
+	/**
+	 * @return the day of the year that the game at the specified index occurs
+	 *         on, counting on past 365 (or 366) in the next year
+	 */
+	public int day(int i) {
+		return day[i];
+	}
+
+	/**
+	 * @return the day of the last game, or 0 if there are no games
+	 */
+	public int lastDay() {
+		return startMinute.length == 0 ? 0 : day[startMinute.length - 1];
+	}
+
+	public int minuteOfDay(int i) {
+		return startMinute[i] - 1440 * day[i];
+	}
+
+	public int stadiumIndex(int i) {
+		return stadium[i] & 0xFF;
+	}
+
+	private int epochMinute(int i) {
+		return yearStart(year) + startMinute[i];
+	}
+
+	// Day 1 of the year is January 1st, so minute 0 is the start of the day
+	// before it.
+	private static int yearStart(int year) {
+		return 1440 * (Game.epochDay(year, 1, 1) - 1);
+	}
+
+	private short[] departureBuckets() {
+		short[] buckets = new short[startMinute.length];
+		for (int i = 0; i < buckets.length; i++) {
+			int timeZone = venues.timeZone(stadiumIndex(i));
+			buckets[i] = (short) DrivingTimes.bucket(timeZone, epochMinute(i) + Game.TIME_OF_GAME);
+		}
+		return buckets;
+	}
+
+}
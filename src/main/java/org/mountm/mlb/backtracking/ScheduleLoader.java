@@ -0,0 +1,281 @@
+package org.mountm.mlb.backtracking;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Loads the schedule and its reachability index from Games.csv. Parsing the
+ * CSV and building the index takes most of the startup time, so the result is
+ * saved to a binary snapshot next to the CSV (Games.csv.snapshot) and later
+ * runs memory map the snapshot instead. The snapshot is:
+ *
+ * <pre>
+ * int   magic ("MLBS")
+ * int   version
+ * long  checksum of the CSV contents
+ * int   checksum of the venues and driving times
+ * int   year of the first game
+ * int   number of games, n
+ * int   start minute of each game, from the start of that year (n)
+ * int   horizon of each game in the reachability index (n)
+ * int   number of words in the reachability bitsets, w
+ * long  reachability bitsets (w)
+ * byte  venue index of each game (n)
+ * </pre>
+ *
+ * The snapshot is rebuilt whenever either checksum does not match, so editing
+ * the CSV or the driving times, or switching to another {@link DrivingTimes}
+ * model or {@link Venues}, is picked up on the next run. Changes to the
+ * reachability rules in {@link Game#canReach(Game)} or to the layout need a new
+ * version.
+ *
+ */
+public class ScheduleLoader {
+
+	private static final int MAGIC = 0x4D4C4253;
+	private static final int VERSION = 3;
+	private static final int HEADER_SIZE = 28;
+	private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+	private final Schedule schedule;
+	private final ReachabilityIndex reachability;
+	private final long checksum;
+	private final int drivingChecksum;
+
+	private ScheduleLoader(Schedule schedule, ReachabilityIndex reachability, long checksum, DrivingTimes times) {
+		this.schedule = schedule;
+		this.reachability = reachability;
+		this.checksum = checksum;
+		drivingChecksum = drivingChecksum(times);
+	}
+
+	/**
+	 * Loads the schedule with the static driving times.
+	 */
+	public static ScheduleLoader load(File csv) throws IOException {
+		return load(csv, DrivingTimes.STATIC);
+	}
+
+	/**
+	 * Reads the schedule from the snapshot next to the CSV file if it is up
+	 * to date, and from the CSV file (writing a new snapshot) if not.
+	 *
+	 * @param csv
+	 *            A file with one game per line, as written by
+	 *            TimeZoneConverter
+	 * @param times
+	 *            The driving times used for reachability and by the schedule,
+	 *            and the venues the games are at
+	 */
+	public static ScheduleLoader load(File csv, DrivingTimes times) throws IOException {
+		byte[] contents = Files.readAllBytes(csv.toPath());
+		CRC32 crc = new CRC32();
+		crc.update(contents);
+		long checksum = crc.getValue();
+		File snapshot = new File(csv.getPath() + SNAPSHOT_SUFFIX);
+
+		try {
+			ScheduleLoader loader = readSnapshot(snapshot, checksum, times);
+			if (loader != null) {
+				return loader;
+			}
+		} catch (IOException e) {
+			System.out.println("Could not read " + snapshot + ", rebuilding it: " + e);
+		}
+
+		Venues venues = times.venues();
+		List<Game> games = new ArrayList<>(2430);
+		BufferedReader br = new BufferedReader(new StringReader(new String(contents, StandardCharsets.US_ASCII)));
+		String currentLine;
+		while ((currentLine = br.readLine()) != null) {
+			int delimiter = currentLine.indexOf(',');
+			// subtract half hour to account for parking and getting into stadium (this will be corrected when printing solutions)
+			int startTime = parseMinute(currentLine, delimiter) - 30;
+			int venue = venues.index(currentLine.substring(delimiter + 1).trim());
+			games.add(new Game(venues, venue, startTime, games.size()));
+		}
+		ScheduleLoader loader = new ScheduleLoader(new Schedule(games, times), new ReachabilityIndex(games, times),
+				checksum, times);
+		try {
+			loader.writeSnapshot(snapshot, checksum, times);
+		} catch (IOException e) {
+			System.out.println("Could not write " + snapshot + ": " + e);
+		}
+		return loader;
+	}
+
+	public Schedule schedule() {
+		return schedule;
+	}
+
+	public ReachabilityIndex reachability() {
+		return reachability;
+	}
+
+	/**
+	 * @return a checksum of the contents of the CSV file. Files that depend
+	 *         on the game indices store it, so that they are not used with
+	 *         another schedule.
+	 */
+	public long checksum() {
+		return checksum;
+	}
+
+	/**
+	 * @return a checksum of the venues and driving times the schedule was
+	 *         loaded with
+	 */
+	public int drivingChecksum() {
+		return drivingChecksum;
+	}
+
+	/**
+	 * @return a new Game object for every game in the schedule, indexed by
+	 *         position
+	 */
+	public List<Game> games() {
+		List<Game> games = new ArrayList<>(schedule.size());
+		for (int i = 0; i < schedule.size(); i++) {
+			games.add(schedule.game(i));
+		}
+		return games;
+	}
+
+	/**
+	 * Parses a date and time in the form MM/dd/yyyy kk:mm (leading zeros are
+	 * optional) from the start of a line, without building a formatter.
+	 *
+	 * @param end
+	 *            The position just after the time
+	 * @return the time in minutes since 1970-01-01 00:00, as in
+	 *         {@link Game#epochMinute()}
+	 */
+	public static int parseMinute(String line, int end) {
+		int slash1 = line.indexOf('/');
+		int slash2 = line.indexOf('/', slash1 + 1);
+		int space = line.indexOf(' ', slash2 + 1);
+		int colon = line.indexOf(':', space + 1);
+		int month = parseInt(line, 0, slash1);
+		int day = parseInt(line, slash1 + 1, slash2);
+		int year = parseInt(line, slash2 + 1, space);
+		// kk is the clock hour, 1 to 24
+		int hour = parseInt(line, space + 1, colon) % 24;
+		int minute = parseInt(line, colon + 1, end);
+		return 1440 * Game.epochDay(year, month, day) + 60 * hour + minute;
+	}
+
+	private static int parseInt(String s, int start, int end) {
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9') {
+				throw new NumberFormatException("Bad number in " + s);
+			}
+			value = 10 * value + (c - '0');
+		}
+		return value;
+	}
+
+	// Returns null if the snapshot does not exist or is out of date
+	private static ScheduleLoader readSnapshot(File snapshot, long checksum, DrivingTimes times) throws IOException {
+		if (!snapshot.exists()) {
+			return null;
+		}
+		try (FileChannel in = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+			if (in.size() < HEADER_SIZE) {
+				return null;
+			}
+			MappedByteBuffer map = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+			if (map.getInt() != MAGIC || map.getInt() != VERSION || map.getLong() != checksum
+					|| map.getInt() != drivingChecksum(times)) {
+				return null;
+			}
+			int year = map.getInt();
+			int n = map.getInt();
+			int[] startMinute = new int[n];
+			map.asIntBuffer().get(startMinute);
+			map.position(map.position() + 4 * n);
+			int[] horizon = new int[n];
+			map.asIntBuffer().get(horizon);
+			map.position(map.position() + 4 * n);
+			long[] bits = new long[map.getInt()];
+			map.asLongBuffer().get(bits);
+			map.position(map.position() + 8 * bits.length);
+			byte[] stadium = new byte[n];
+			map.get(stadium);
+			return new ScheduleLoader(new Schedule(year, startMinute, stadium, times),
+					new ReachabilityIndex(horizon, bits), checksum, times);
+		}
+	}
+
+	// Written next to the old snapshot and moved into place, so another run
+	// never maps a partly written file.
+	private void writeSnapshot(File snapshot, long checksum, DrivingTimes times) throws IOException {
+		int n = schedule.size();
+		Path path = snapshot.toPath();
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp.toFile())))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(checksum);
+			out.writeInt(drivingChecksum(times));
+			out.writeInt(schedule.year());
+			out.writeInt(n);
+			for (int i = 0; i < n; i++) {
+				out.writeInt(schedule.startMinute(i));
+			}
+			for (int i = 0; i < n; i++) {
+				out.writeInt(reachability.horizon(i));
+			}
+			// the bitsets are rebuilt from canReach, one row per game covering
+			// the games up to its horizon
+			int words = 0;
+			for (int i = 0; i < n; i++) {
+				words += ReachabilityIndex.words(i, reachability.horizon(i));
+			}
+			out.writeInt(words);
+			for (int i = 0; i < n; i++) {
+				long[] row = new long[ReachabilityIndex.words(i, reachability.horizon(i))];
+				for (int j = i + 1; j < reachability.horizon(i); j++) {
+					if (reachability.canReach(i, j)) {
+						int bit = j - i - 1;
+						row[bit >>> 6] |= 1L << bit;
+					}
+				}
+				for (long word : row) {
+					out.writeLong(word);
+				}
+			}
+			for (int i = 0; i < n; i++) {
+				out.writeByte(schedule.stadiumIndex(i));
+			}
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static int drivingChecksum(DrivingTimes times) {
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+		buffer.putInt(times.venues().checksum());
+		buffer.putInt(times.checksum());
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array());
+		return (int) crc.getValue();
+	}
+
+}
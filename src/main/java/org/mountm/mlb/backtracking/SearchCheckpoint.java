@@ -0,0 +1,169 @@
+package org.mountm.mlb.backtracking;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The position of a depth-first search, saved so that an interrupted search
+ * can continue where it left off. The pruning store is saved separately, in
+ * noExtensions.dat. The file is:
+ *
+ * <pre>
+ * int   magic ("MLBC")
+ * int   version
+ * int   maximum number of days in a trip
+ * long  checksum of the schedule
+ * int   checksum of the venues and driving times
+ * int   best trip length so far
+ * int   number of games in the root candidate, then each game index
+ * int   number of games in the best trip so far (0 if none), then each game
+ * int   number of games in the partial solution being searched, then each game
+ * </pre>
+ *
+ * The checksums are those of {@link ScheduleLoader}. Game indices only mean
+ * something in the schedule they came from, so a checkpoint is only resumed
+ * with the same schedule and driving times.
+ *
+ */
+public class SearchCheckpoint {
+
+	private static final int MAGIC = 0x4D4C4243;
+	private static final int VERSION = 3;
+
+	private final int numDays;
+	private final long scheduleChecksum;
+	private final int drivingChecksum;
+	private final int bestTripLength;
+	private final int[] root;
+	private final int[] bestSolution;
+	private final int[] position;
+
+	public SearchCheckpoint(int numDays, long scheduleChecksum, int drivingChecksum, int bestTripLength, int[] root,
+			int[] bestSolution, int[] position) {
+		this.numDays = numDays;
+		this.scheduleChecksum = scheduleChecksum;
+		this.drivingChecksum = drivingChecksum;
+		this.bestTripLength = bestTripLength;
+		this.root = root;
+		this.bestSolution = bestSolution;
+		this.position = position;
+	}
+
+	/**
+	 * Reads a checkpoint written by {@link #write(File)}.
+	 *
+	 * @return the checkpoint, or null if the file does not exist or is not a
+	 *         checkpoint file.
+	 */
+	public static SearchCheckpoint read(File file) throws IOException {
+		if (!file.exists()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				System.out.println(file + " is not a version " + VERSION + " checkpoint file, ignoring it");
+				return null;
+			}
+			int numDays = in.readInt();
+			long scheduleChecksum = in.readLong();
+			int drivingChecksum = in.readInt();
+			int bestTripLength = in.readInt();
+			return new SearchCheckpoint(numDays, scheduleChecksum, drivingChecksum, bestTripLength, readGames(in),
+					readGames(in), readGames(in));
+		} catch (EOFException e) {
+			System.out.println(file + " is incomplete, ignoring it");
+			return null;
+		}
+	}
+
+	/**
+	 * Replaces the file with this checkpoint. The new file is written next to
+	 * the old one and moved into place, so a crash while writing leaves the
+	 * previous checkpoint intact.
+	 */
+	public void write(File file) throws IOException {
+		Path path = file.toPath();
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileOutputStream fos = new FileOutputStream(temp.toFile());
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(numDays);
+			out.writeLong(scheduleChecksum);
+			out.writeInt(drivingChecksum);
+			out.writeInt(bestTripLength);
+			writeGames(out, root);
+			writeGames(out, bestSolution);
+			writeGames(out, position);
+			out.flush();
+			fos.getFD().sync();
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public int numDays() {
+		return numDays;
+	}
+
+	public long scheduleChecksum() {
+		return scheduleChecksum;
+	}
+
+	public int drivingChecksum() {
+		return drivingChecksum;
+	}
+
+	public int bestTripLength() {
+		return bestTripLength;
+	}
+
+	/**
+	 * @return the games in the root candidate the search was started from
+	 */
+	public int[] root() {
+		return root;
+	}
+
+	/**
+	 * @return the games in the best trip found so far, or an empty array if
+	 *         none has been found
+	 */
+	public int[] bestSolution() {
+		return bestSolution;
+	}
+
+	/**
+	 * @return the games in the partial solution the search was about to
+	 *         search. Every partial solution the search visits before it has
+	 *         already been searched.
+	 */
+	public int[] position() {
+		return position;
+	}
+
+	private static int[] readGames(DataInputStream in) throws IOException {
+		int[] games = new int[in.readInt()];
+		for (int i = 0; i < games.length; i++) {
+			games[i] = in.readInt();
+		}
+		return games;
+	}
+
+	private static void writeGames(DataOutputStream out, int[] games) throws IOException {
+		out.writeInt(games.length);
+		for (int game : games) {
+			out.writeInt(game);
+		}
+	}
+
+}
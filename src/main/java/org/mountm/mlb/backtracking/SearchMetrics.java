@@ -0,0 +1,134 @@
+package org.mountm.mlb.backtracking;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for the backtracking search: how many partial solutions were
+ * checked at each depth, how often each pruning rule fired, and how useful
+ * noExtensions is. The counters can be updated by several search threads at
+ * once. A snapshot is a single line of JSON.
+ *
+ */
+public class SearchMetrics {
+
+	/**
+	 * The rules in BacktrackingRunner.badSolution, in the order they are
+	 * checked.
+	 */
+	public enum PruneRule {
+		DAY_LIMIT("dayLimit"),
+		TRIP_LENGTH("tripLength"),
+		DOUBLE_HEADERS("doubleHeaders"),
+		WEST_COAST("westCoast"),
+		MISSED_STADIUM("missedStadium"),
+		NO_EXTENSIONS("noExtensions");
+
+		private final String key;
+
+		private PruneRule(String key) {
+			this.key = key;
+		}
+	}
+
+	private static final PruneRule[] RULES = PruneRule.values();
+
+	private final LongAdder[] depth;
+	private final LongAdder[] pruned = new LongAdder[RULES.length];
+	private final LongAdder noExtensionsLookups = new LongAdder();
+	private final long startTime = System.currentTimeMillis();
+	private long lastSnapshotTime = startTime;
+	private long lastSnapshotNodes = 0;
+
+	public SearchMetrics() {
+		this(Venues.MLB.size());
+	}
+
+	public SearchMetrics(int numStadiums) {
+		depth = new LongAdder[numStadiums + 1];
+		for (int i = 0; i < depth.length; i++) {
+			depth[i] = new LongAdder();
+		}
+		for (int i = 0; i < pruned.length; i++) {
+			pruned[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Counts a partial solution of the specified size.
+	 */
+	public void node(int size) {
+		depth[size].increment();
+	}
+
+	/**
+	 * Counts a partial solution that was rejected by the specified rule.
+	 *
+	 * @return <code>true</code>, so that it can be returned from badSolution
+	 */
+	public boolean pruned(PruneRule rule) {
+		pruned[rule.ordinal()].increment();
+		return true;
+	}
+
+	public void noExtensionsLookup() {
+		noExtensionsLookups.increment();
+	}
+
+	/**
+	 * @return the number of partial solutions checked so far
+	 */
+	public long nodes() {
+		long nodes = 0;
+		for (LongAdder count : depth) {
+			nodes += count.sum();
+		}
+		return nodes;
+	}
+
+	public long prunedCount(PruneRule rule) {
+		return pruned[rule.ordinal()].sum();
+	}
+
+	/**
+	 * @param noExtensionsSize
+	 *            The number of entries currently in noExtensions
+	 * @return the current counters as one line of JSON. The node rate is
+	 *         measured since the previous snapshot.
+	 */
+	public synchronized String snapshot(int noExtensionsSize) {
+		long now = System.currentTimeMillis();
+		long nodes = nodes();
+		long interval = Math.max(1, now - lastSnapshotTime);
+		long nodesPerSecond = 1000 * (nodes - lastSnapshotNodes) / interval;
+		lastSnapshotTime = now;
+		lastSnapshotNodes = nodes;
+
+		StringBuilder sb = new StringBuilder("{");
+		sb.append("\"time\":").append(now);
+		sb.append(",\"elapsedSeconds\":").append((now - startTime) / 1000);
+		sb.append(",\"nodes\":").append(nodes);
+		sb.append(",\"nodesPerSecond\":").append(nodesPerSecond);
+		sb.append(",\"pruned\":{");
+		for (PruneRule rule : RULES) {
+			if (rule.ordinal() > 0) {
+				sb.append(",");
+			}
+			sb.append("\"").append(rule.key).append("\":").append(prunedCount(rule));
+		}
+		long lookups = noExtensionsLookups.sum();
+		long hits = prunedCount(PruneRule.NO_EXTENSIONS);
+		sb.append("},\"noExtensions\":{\"size\":").append(noExtensionsSize);
+		sb.append(",\"lookups\":").append(lookups);
+		sb.append(",\"hits\":").append(hits);
+		sb.append(",\"hitRate\":").append(lookups == 0 ? 0 : (double) hits / lookups);
+		sb.append("},\"depth\":[");
+		for (int i = 0; i < depth.length; i++) {
+			if (i > 0) {
+				sb.append(",");
+			}
+			sb.append(depth[i].sum());
+		}
+		return sb.append("]}").toString();
+	}
+
+}
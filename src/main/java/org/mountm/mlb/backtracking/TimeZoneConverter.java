@@ -10,29 +10,36 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormat;
-import org.joda.time.format.DateTimeFormatter;
-
 public class TimeZoneConverter {
 
 	static List<Game> gameList = new ArrayList<Game>(2430);
 
 	public static void main(String[] args) {
+		// the raw schedule, and the directory Games.csv is written to
+		String rawFile = "GamesRaw.csv";
+		String outputDir = null;
+		String venuesFile = null;
+		for (String arg : args) {
+			if (arg.startsWith("--games=")) {
+				rawFile = arg.substring("--games=".length());
+			} else if (arg.startsWith("--output-dir=")) {
+				outputDir = arg.substring("--output-dir=".length());
+			} else if (arg.startsWith("--venues=")) {
+				venuesFile = arg.substring("--venues=".length());
+			}
+		}
+		Venues venues = BacktrackingRunner.readVenues(venuesFile);
 		BufferedReader input = null;
 		String currentLine;
 		try {
-			input = new BufferedReader(new FileReader("GamesRaw.csv"));
+			input = new BufferedReader(new FileReader(rawFile));
 			while ((currentLine = input.readLine()) != null) {
 				int delimiter = currentLine.indexOf(",");
-				DateTimeFormatter format = DateTimeFormat
-						.forPattern("MM/dd/yyyy kk:mm");
-				DateTime test = format.parseDateTime(currentLine.substring(0,
-						delimiter));
-				Stadium stadium = Stadium.valueOf(currentLine
+				int venue = venues.index(currentLine
 						.substring(delimiter + 1));
-				test = test.plusHours(stadium.getTimeZone());
-				gameList.add(new Game(stadium, test));
+				int test = ScheduleLoader.parseMinute(currentLine, delimiter)
+						+ 60 * venues.timeZone(venue);
+				gameList.add(new Game(venues, venue, test, -1));
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -49,7 +56,7 @@ public class TimeZoneConverter {
 
 		try {
 
-			File file = new File("Games.csv");
+			File file = BacktrackingRunner.outputFile(outputDir, "Games.csv");
 
 			// if file doesn't exists, then create it
 			if (!file.exists()) {
@@ -61,7 +68,7 @@ public class TimeZoneConverter {
 
 			for (Game g : gameList) {
 				bw.write(g.getDate().toString("MM/dd/yyyy kk:mm") + ",");
-				bw.write(g.getStadium().toString());
+				bw.write(g.venueCode());
 				bw.newLine();
 			}
 
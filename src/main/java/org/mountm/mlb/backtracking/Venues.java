@@ -0,0 +1,213 @@
+package org.mountm.mlb.backtracking;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The venues a trip has to visit, with their time zones and the driving
+ * times between them. Venues are identified by their index, and the driving
+ * times are one flat matrix indexed by <code>from * size() + to</code>. The
+ * first venue is home: trips start and end there.
+ *
+ * {@link #MLB} holds the 30 {@link Stadium}s, in the same order. Other
+ * circuits are read from a data file with one line per venue:
+ *
+ * <pre>
+ * # code,time zone,minutes to each venue in file order
+ * HOM,0,0,95,240
+ * AAA,0,96,0,180
+ * BBB,1,238,181,0
+ * </pre>
+ *
+ * Time zones are hours behind the clock the schedule is written in, as in
+ * {@link Stadium#getTimeZone()}. The search keeps the visited venues of a
+ * route in a long, so it handles up to {@link #MAX_SEARCH_SIZE} venues; the
+ * linear programs have no limit.
+ *
+ */
+public class Venues {
+
+	public static final int MAX_SEARCH_SIZE = Long.SIZE;
+	// schedules store the venue of each game in a byte
+	private static final int MAX_SIZE = 256;
+
+	public static final Venues MLB = mlb();
+
+	private final String[] codes;
+	private final int[] timeZone;
+	private final int[] minutes;
+	private final Map<String, Integer> index = new HashMap<>();
+	private final int checksum;
+
+	private Venues(String[] codes, int[] timeZone, int[] minutes) {
+		this.codes = codes;
+		this.timeZone = timeZone;
+		this.minutes = minutes;
+		for (int i = 0; i < codes.length; i++) {
+			index.put(codes[i], i);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(4 * (timeZone.length + minutes.length));
+		buffer.asIntBuffer().put(timeZone).put(minutes);
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array());
+		for (String code : codes) {
+			crc.update(code.getBytes(StandardCharsets.US_ASCII));
+		}
+		checksum = (int) crc.getValue();
+	}
+
+	private static Venues mlb() {
+		Stadium[] stadiums = Stadium.values();
+		int n = stadiums.length;
+		String[] codes = new String[n];
+		int[] timeZone = new int[n];
+		int[] minutes = new int[n * n];
+		for (Stadium from : stadiums) {
+			codes[from.getIndex()] = from.name();
+			timeZone[from.getIndex()] = from.getTimeZone();
+			for (Stadium to : stadiums) {
+				minutes[from.getIndex() * n + to.getIndex()] = from.getMinutesTo(to);
+			}
+		}
+		return new Venues(codes, timeZone, minutes);
+	}
+
+	/**
+	 * Reads the venues from a data file in the format described above.
+	 */
+	public static Venues read(File file) throws IOException {
+		List<String[]> lines = new ArrayList<>();
+		try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+			String currentLine;
+			while ((currentLine = br.readLine()) != null) {
+				currentLine = currentLine.trim();
+				if (!currentLine.isEmpty() && !currentLine.startsWith("#")) {
+					lines.add(currentLine.split(","));
+				}
+			}
+		}
+		int n = lines.size();
+		if (n < 2 || n > MAX_SIZE) {
+			throw new IOException(file + ": expected 2 to " + MAX_SIZE + " venues, found " + n);
+		}
+		String[] codes = new String[n];
+		int[] timeZone = new int[n];
+		int[] minutes = new int[n * n];
+		for (int from = 0; from < n; from++) {
+			String[] line = lines.get(from);
+			if (line.length != n + 2) {
+				throw new IOException(file + ": " + line[0].trim() + " should have a time zone and " + n
+						+ " driving times");
+			}
+			codes[from] = line[0].trim();
+			try {
+				timeZone[from] = Integer.parseInt(line[1].trim());
+				for (int to = 0; to < n; to++) {
+					minutes[from * n + to] = Integer.parseInt(line[to + 2].trim());
+				}
+			} catch (NumberFormatException e) {
+				throw new IOException(file + ": bad number for " + codes[from] + ": " + e.getMessage());
+			}
+		}
+		Venues venues = new Venues(codes, timeZone, minutes);
+		if (venues.index.size() != n) {
+			throw new IOException(file + ": venue codes must be unique");
+		}
+		return venues;
+	}
+
+	public int size() {
+		return codes.length;
+	}
+
+	/**
+	 * @return the venue trips start and end at
+	 */
+	public int home() {
+		return 0;
+	}
+
+	public String code(int venue) {
+		return codes[venue];
+	}
+
+	/**
+	 * @return the index of the venue with the specified code
+	 * @throws IllegalArgumentException
+	 *             if there is no such venue
+	 */
+	public int index(String code) {
+		Integer venue = index.get(code);
+		if (venue == null) {
+			throw new IllegalArgumentException("No venue " + code);
+		}
+		return venue;
+	}
+
+	public int timeZone(int venue) {
+		return timeZone[venue];
+	}
+
+	/**
+	 * @return the driving time between two venues in light traffic
+	 */
+	public int minutes(int from, int to) {
+		return minutes[from * codes.length + to];
+	}
+
+	/**
+	 * @return a mask with a bit set for every venue. Only for circuits the
+	 *         search can handle.
+	 */
+	public long allMask() {
+		return size() == Long.SIZE ? -1L : (1L << size()) - 1;
+	}
+
+	/**
+	 * @return the venues in the time zone furthest west. A trip that goes
+	 *         there has to visit all of them before it leaves.
+	 */
+	public boolean[] westCoast() {
+		int west = Integer.MIN_VALUE;
+		for (int tz : timeZone) {
+			west = Math.max(west, tz);
+		}
+		boolean[] westCoast = new boolean[size()];
+		for (int i = 0; i < westCoast.length; i++) {
+			westCoast[i] = timeZone[i] == west;
+		}
+		return westCoast;
+	}
+
+	/**
+	 * @return a checksum of the codes, time zones and driving times
+	 */
+	public int checksum() {
+		return checksum;
+	}
+
+	/**
+	 * @return the codes of the venues in the mask, in the same form as
+	 *         EnumSet.toString
+	 */
+	public String toString(long mask) {
+		StringBuilder sb = new StringBuilder("[");
+		for (long rest = mask; rest != 0; rest &= rest - 1) {
+			if (sb.length() > 1) {
+				sb.append(", ");
+			}
+			sb.append(codes[Long.numberOfTrailingZeros(rest)]);
+		}
+		return sb.append("]").toString();
+	}
+
+}